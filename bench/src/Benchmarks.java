@@ -0,0 +1,334 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * The Benchmarks class measures the hot paths of the Treasure Hunter game.<p>
+ * Each benchmark is warmed up and then run for a few timed iterations, reporting the time per operation and,
+ * like a GC profiler, the bytes allocated per operation, the allocation rate and the garbage collections seen.
+ * Results can be saved as a baseline and later runs compared against it, so every change to the game classes
+ * can be measured. With --fork every benchmark runs in a fresh JVM so they can't skew each other's profiles.<p>
+ * The game classes live in the default package, which JMH can't generate benchmarks for, so this is a small
+ * stand-alone harness that follows the same warmup, measurement and fork structure.<p>
+ * Usage: Benchmarks [--only name] [--fork] [--save file] [--baseline file]
+ */
+
+public class Benchmarks {
+    // constants
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    private static final int BATCH = 1024;
+
+    // static variables
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static volatile long sink; // keeps the JIT from throwing results away
+
+    /**
+     * The result of one benchmark.
+     */
+    private static class Result {
+        private String name;
+        private double nanosPerOp;
+        private double bytesPerOp;
+        private double allocationRate;
+        private long gcCount;
+        private long gcMillis;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String only = null;
+        boolean fork = false;
+        boolean child = false;
+        String saveFile = null;
+        String baselineFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--only") && i + 1 < args.length) {
+                only = args[++i];
+            } else if (args[i].equals("--fork")) {
+                fork = true;
+            } else if (args[i].equals("--child")) {
+                child = true;
+            } else if (args[i].equals("--save") && i + 1 < args.length) {
+                saveFile = args[++i];
+            } else if (args[i].equals("--baseline") && i + 1 < args.length) {
+                baselineFile = args[++i];
+            }
+        }
+
+        Map<String, LongSupplier> benchmarks = benchmarks();
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, LongSupplier> benchmark : benchmarks.entrySet()) {
+            if (only != null && !only.equals(benchmark.getKey())) {
+                continue;
+            }
+            Result result = fork ? runForked(benchmark.getKey()) : run(benchmark.getKey(), benchmark.getValue());
+            results.add(result);
+        }
+
+        if (child) {
+            // a forked child just hands its numbers back to the parent
+            for (Result result : results) {
+                System.out.println(toCsv(result));
+            }
+            return;
+        }
+
+        Map<String, Result> baseline = baselineFile == null ? new HashMap<>() : load(Paths.get(baselineFile));
+        print(results, baseline);
+        if (saveFile != null) {
+            save(Paths.get(saveFile), results);
+        }
+    }
+
+    /**
+     * @return every benchmark, by name.
+     */
+    private static Map<String, LongSupplier> benchmarks() {
+        Map<String, LongSupplier> benchmarks = new LinkedHashMap<>();
+
+        Hunter shopper = newHunter("n", 1000);
+        benchmarks.put("hunter.buyAndSell", () -> {
+            shopper.buyItem("horse", 12, "n");
+            shopper.sellItem("horse", 12);
+            return shopper.getGold();
+        });
+
+        Hunter carrier = newHunter("n", 1000);
+        carrier.buyItem("rope", 4, "n");
+        carrier.buyItem("shovel", 8, "n");
+        benchmarks.put("hunter.hasItemInContainer", () -> carrier.hasItemInContainer("shovel", carrier.getKit()) ? 1 : 0);
+
+        Shop shop = newShop("n", new GameRandom(1));
+        benchmarks.put("shop.getCostOfItem", () -> shop.getCostOfItem("horse"));
+        benchmarks.put("shop.inventory", () -> shop.inventory().length());
+
+        Hunter samurai = newHunter("s", 1000);
+        samurai.buyItem("sword", 0, "s");
+        benchmarks.put("terrain.canCrossTerrain", () -> Terrain.JUNGLE.canCrossTerrain(samurai) ? 1 : 0);
+
+        GameRandom brawlRandom = new GameRandom(2);
+        Hunter brawler = newHunter("n", 1_000_000);
+        Town brawlTown = new Town(newShop("n", brawlRandom), 0.4, "n", brawlRandom);
+        brawlTown.hunterArrives(brawler);
+        benchmarks.put("town.lookForTrouble", () -> {
+            brawlTown.lookForTrouble();
+            return brawler.getGold();
+        });
+
+        // in easy mode items never break, so the hunter can keep leaving the same town
+        GameRandom travelRandom = new GameRandom(3);
+        Hunter traveller = newHunter("e", 1000);
+        for (Item item : new Item[] {Item.WATER, Item.ROPE, Item.BOOTS, Item.MACHETE, Item.HORSE, Item.BOAT}) {
+            traveller.buyItem(item, 1, "e");
+        }
+        Town travelTown = new Town(newShop("e", travelRandom), 0.2, "e", travelRandom);
+        travelTown.hunterArrives(traveller);
+        benchmarks.put("town.leaveTown", () -> travelTown.leaveTown() ? 1 : 0);
+
+        GameRandom gameRandom = new GameRandom(4);
+        benchmarks.put("game.scripted", () -> {
+            TreasureHunter game = new TreasureHunter(new ScriptedPolicy(), null, gameRandom);
+            game.play();
+            return game.getTurns();
+        });
+
+        return benchmarks;
+    }
+
+    /**
+     * Warms a benchmark up, then measures it.
+     */
+    private static Result run(String name, LongSupplier operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(operation);
+        }
+
+        long threadId = Thread.currentThread().threadId();
+        long ops = 0;
+        long nanos = 0;
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            ops += iterate(operation);
+            nanos += System.nanoTime() - start;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Result result = new Result();
+        result.name = name;
+        result.nanosPerOp = (double) nanos / ops;
+        result.bytesPerOp = (double) allocated / ops;
+        result.allocationRate = allocated / (nanos / 1e9) / (1024 * 1024);
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcMillis = gcMillis() - gcMillisBefore;
+        return result;
+    }
+
+    /**
+     * Runs an operation in batches until an iteration's time is up.
+     *
+     * @return how many times the operation ran.
+     */
+    private static long iterate(LongSupplier operation) {
+        long ops = 0;
+        long result = 0;
+        long end = System.nanoTime() + ITERATION_NANOS;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                result += operation.getAsLong();
+            }
+            ops += BATCH;
+        } while (System.nanoTime() < end);
+        sink = result;
+        return ops;
+    }
+
+    /**
+     * Runs one benchmark in a fresh JVM with the same class path.
+     */
+    private static Result runForked(String name) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Benchmarks", "--only", name, "--child");
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        Result result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(name + ",")) {
+                    result = fromCsv(line);
+                } else {
+                    System.out.println(line);
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Forked benchmark " + name + " failed.");
+        }
+        return result;
+    }
+
+    private static void print(List<Result> results, Map<String, Result> baseline) {
+        System.out.println(String.format("%-28s %12s %12s %12s %8s %8s %10s", "Benchmark", "ns/op", "B/op", "MB/s alloc", "GCs", "GC ms", "vs base"));
+        for (Result result : results) {
+            String change = "";
+            Result base = baseline.get(result.name);
+            if (base != null) {
+                change = String.format("%+.1f%%", 100 * (result.nanosPerOp - base.nanosPerOp) / base.nanosPerOp);
+            }
+            System.out.println(String.format("%-28s %12.2f %12.2f %12.1f %8d %8d %10s", result.name, result.nanosPerOp,
+                    result.bytesPerOp, result.allocationRate, result.gcCount, result.gcMillis, change));
+        }
+    }
+
+    private static void save(Path file, List<Result> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (Result result : results) {
+                writer.println(toCsv(result));
+            }
+        }
+    }
+
+    private static Map<String, Result> load(Path file) throws IOException {
+        Map<String, Result> results = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) {
+                Result result = fromCsv(line);
+                results.put(result.name, result);
+            }
+        }
+        return results;
+    }
+
+    private static String toCsv(Result result) {
+        return result.name + "," + result.nanosPerOp + "," + result.bytesPerOp + "," + result.allocationRate + ","
+                + result.gcCount + "," + result.gcMillis;
+    }
+
+    private static Result fromCsv(String line) {
+        String[] fields = line.split(",");
+        Result result = new Result();
+        result.name = fields[0];
+        result.nanosPerOp = Double.parseDouble(fields[1]);
+        result.bytesPerOp = Double.parseDouble(fields[2]);
+        result.allocationRate = Double.parseDouble(fields[3]);
+        result.gcCount = Long.parseLong(fields[4]);
+        result.gcMillis = Long.parseLong(fields[5]);
+        return result;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static Hunter newHunter(String mode, int gold) {
+        Hunter hunter = new Hunter("bench", gold);
+        hunter.setHunterMode(mode);
+        return hunter;
+    }
+
+    private static Shop newShop(String mode, GameRandom random) {
+        return new Shop(0.5, mode, new ScriptedPolicy(), null, random);
+    }
+
+    /**
+     * Plays the same moves every game: buy a shovel and some water, then dig, hunt, brawl and move on.
+     */
+    private static class ScriptedPolicy implements Policy {
+        private static final String[] ACTIONS = {"b", "d", "h", "l", "b", "m", "s", "l"};
+        private static final String[] BUYS = {"shovel", "water"};
+        private static final int MAX_TURNS = 200;
+
+        private int buys;
+
+        public String chooseName() {
+            return "bench";
+        }
+
+        public String chooseMode() {
+            return "n";
+        }
+
+        public String chooseAction(TreasureHunter game) {
+            if (game.getTurns() >= MAX_TURNS) {
+                return "x";
+            }
+            return ACTIONS[game.getTurns() % ACTIONS.length];
+        }
+
+        public String chooseShopItem(Hunter hunter, boolean isBuying) {
+            return isBuying ? BUYS[buys++ % BUYS.length] : "rope";
+        }
+
+        public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+            return "y";
+        }
+    }
+}
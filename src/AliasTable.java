@@ -0,0 +1,114 @@
+/**
+ * The AliasTable class picks one of a fixed set of outcomes, each with its own chance, from a single roll.<p>
+ * It is Walker's alias method, built with Vose's algorithm: every outcome gets a column of the same width,
+ * shared between the outcome itself and at most one other (its alias). A roll picks a column and where in the
+ * column it landed, so any number of outcomes costs one roll, one multiply and one comparison.<p>
+ * A table never changes once it is built, so any number of threads can share it.
+ */
+
+public class AliasTable {
+    // instance variables
+    private final double[] chances;
+    private final double[] split; // the share of each column that is its own outcome
+    private final int[] alias;
+
+    /**
+     * Builds a table from the weight of every outcome.
+     *
+     * @param weights How likely each outcome is; they don't have to add up to 1.
+     */
+    public AliasTable(double... weights) {
+        int n = weights.length;
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("A weight can't be " + weight);
+            }
+            total += weight;
+        }
+        if (n == 0 || total <= 0) {
+            throw new IllegalArgumentException("At least one outcome has to be possible");
+        }
+
+        chances = new double[n];
+        split = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smalls = 0;
+        int larges = 0;
+        for (int i = 0; i < n; i++) {
+            chances[i] = weights[i] / total;
+            scaled[i] = chances[i] * n;
+            if (scaled[i] < 1) {
+                small[smalls++] = i;
+            } else {
+                large[larges++] = i;
+            }
+        }
+
+        // fill each short column up with part of a tall one
+        while (smalls > 0 && larges > 0) {
+            int less = small[--smalls];
+            int more = large[--larges];
+            split[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smalls++] = more;
+            } else {
+                large[larges++] = more;
+            }
+        }
+
+        // whatever is left is full, give or take rounding
+        while (larges > 0) {
+            int full = large[--larges];
+            split[full] = 1;
+            alias[full] = full;
+        }
+        while (smalls > 0) {
+            int full = small[--smalls];
+            split[full] = 1;
+            alias[full] = full;
+        }
+    }
+
+    /**
+     * @return the number of outcomes.
+     */
+    public int size() {
+        return chances.length;
+    }
+
+    /**
+     * @param outcome An outcome.
+     * @return the chance of the outcome being picked.
+     */
+    public double getChance(int outcome) {
+        return chances[outcome];
+    }
+
+    /**
+     * Picks an outcome with one roll.
+     *
+     * @param random Where the roll comes from.
+     * @return the outcome.
+     */
+    public int sample(GameRandom random) {
+        return sample(random.nextLong());
+    }
+
+    /**
+     * Picks an outcome from a random long, such as one returned by GameRandom.nextLong().
+     *
+     * @param bits A random long.
+     * @return the outcome.
+     */
+    public int sample(long bits) {
+        double column = GameRandom.toDouble(bits) * split.length;
+        int picked = (int) column;
+        return column - picked < split[picked] ? picked : alias[picked];
+    }
+}
@@ -0,0 +1,37 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a brawl the hunter found while looking for trouble (Town.lookForTrouble).
+ */
+
+@Name("treasurehunter.Brawl")
+@Label("Brawl")
+@Category("Treasure Hunter")
+@Description("A hunter gets into a brawl")
+public class BrawlEvent extends jdk.jfr.Event {
+    @Label("Hunter")
+    String hunter;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Gold")
+    @Description("The hunter's gold after the brawl")
+    int gold;
+
+    @Label("Item")
+    @Description("The sword, if the hunter drew one")
+    String item;
+
+    @Label("Won")
+    boolean won;
+
+    @Label("Gold Change")
+    int goldDelta;
+
+    @Label("Tough Town")
+    boolean toughTown;
+}
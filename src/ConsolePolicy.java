@@ -0,0 +1,70 @@
+import java.io.PrintStream;
+import java.util.Scanner;
+
+/**
+ * The ConsolePolicy reads every decision from the player, one line at a time.<p>
+ * The menus themselves are printed by the game; this class only reads the answers.
+ */
+
+public class ConsolePolicy implements Policy {
+    // instance variables
+    private Scanner scanner;
+    private PrintStream out;
+
+    /**
+     * Creates a policy that reads from the given Scanner.
+     *
+     * @param scanner The Scanner to read the player's answers from.
+     */
+    public ConsolePolicy(Scanner scanner) {
+        this(scanner, null);
+    }
+
+    /**
+     * Creates a policy that reads from the given Scanner, after flushing whatever the game printed.<p>
+     * This way a buffered output stream only reaches the player once per question.
+     *
+     * @param scanner The Scanner to read the player's answers from.
+     * @param out The stream to flush before every read, or null.
+     */
+    public ConsolePolicy(Scanner scanner, PrintStream out) {
+        this.scanner = scanner;
+        this.out = out;
+    }
+
+    public String chooseName() {
+        return readLine();
+    }
+
+    public String chooseMode() {
+        return readLine();
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        return readLine();
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return readLine();
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return readLine();
+    }
+
+    /**
+     * Reads the next answer and lower cases it.<p>
+     * If the input has run out (the player hung up) the answer is "x", which ends the game.
+     *
+     * @return the player's answer.
+     */
+    private String readLine() {
+        if (out != null) {
+            out.flush();
+        }
+        if (!scanner.hasNextLine()) {
+            return "x";
+        }
+        return scanner.nextLine().toLowerCase();
+    }
+}
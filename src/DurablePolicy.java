@@ -0,0 +1,97 @@
+/**
+ * The DurablePolicy wraps the policy playing a game and logs every decision in a WriteAheadLog before the game
+ * acts on it.<p>
+ * Each decision waits until it is on the disk, so once the game has done something it can always be brought
+ * back. A pause isn't a decision and isn't logged.<p>
+ * When the hunter first reaches the menu, and whenever they come back to it from the shop or from searching,
+ * digging or looking for trouble, the game is logged as a snapshot first, and the snapshot is on the disk before
+ * the player is asked for their next move. So recovering it doesn't depend on what the shop charged, or on what
+ * other hunters on a SharedWorld had already taken, or on which world it was on.
+ */
+
+public class DurablePolicy implements Policy {
+    // instance variables
+    private Policy policy;
+    private WriteAheadLog log;
+    private long session;
+    private int decisions;
+    private boolean checkpointDue;
+
+    /**
+     * Creates a policy that logs a session's decisions.
+     *
+     * @param policy The policy making the decisions.
+     * @param log The log.
+     * @param session The session's number in the log, from WriteAheadLog.begin() or a recovered game.
+     */
+    public DurablePolicy(Policy policy, WriteAheadLog log, long session) {
+        this.policy = policy;
+        this.log = log;
+        this.session = session;
+        checkpointDue = true;
+    }
+
+    public String chooseName() {
+        return commit(policy.chooseName());
+    }
+
+    public String chooseMode() {
+        return commit(policy.chooseMode());
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        if (checkpointDue) {
+            log.checkpoint(session, SessionSnapshot.save(game));
+            checkpointDue = false;
+        }
+        String decision = commit(policy.chooseAction(game));
+        if (decision != null) {
+            checkpointDue = switch (decision) {
+                case "b", "s", "l", "h", "d" -> true;
+                default -> false;
+            };
+        }
+        return decision;
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return commit(policy.chooseShopItem(hunter, isBuying));
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return commit(policy.confirm(hunter, item, cost, isBuying));
+    }
+
+    //Accessors
+    public long getSession() {
+        return session;
+    }
+
+    /**
+     * @return the number of decisions logged through this policy.
+     */
+    public int getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Logs that the game is over, so it isn't recovered.
+     */
+    public void end() {
+        log.end(session);
+    }
+
+    /**
+     * Logs a decision and waits for it to reach the disk.
+     *
+     * @param decision The decision the policy made.
+     * @return the same decision, so it can be handed on to the game.
+     */
+    private String commit(String decision) {
+        if (decision != null) {
+            log.commit(session, decision);
+            decisions++;
+        }
+        return decision;
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The EventBus lets analytics, leaderboards and audit logs watch every game without slowing any of them down.<p>
+ * Each session publishes its GameEvents to an EventRing of its own, from the thread playing the game, and each
+ * EventConsumer runs on a background thread that goes round every open ring handing it whatever has been
+ * published since last time, a batch at a time. The hunter's gold, purchases, sales and treasures, leaving town
+ * and looking for trouble are all published, so a player's turn only pays for a few array stores.<p>
+ * When there is nothing new, a consumer waits with the bus's WaitStrategy; when a consumer falls a whole ring
+ * behind a session, the session waits for it with the same strategy. Nothing is allocated per event either way.<p>
+ * Usage: EventBus [games] [threads] [wait strategy] [ring size] to play games on several threads with and
+ * without a bus, and compare the time taken.
+ */
+
+public class EventBus implements AutoCloseable {
+    // constants
+    public static final int DEFAULT_RING_SIZE = 256;
+
+    // instance variables
+    private EventConsumer[] consumers;
+    private List<ConcurrentLinkedQueue<EventRing>> inboxes;
+    private Thread[] threads;
+    private WaitStrategy waitStrategy;
+    private int ringSize;
+    private AtomicLong sessions;
+    private AtomicInteger openRings;
+    private AtomicLongArray handled;
+    private LongAdder stalls;
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a bus and starts a thread for each consumer.
+     *
+     * @param ringSize The number of events each session's ring holds, a power of two.
+     * @param waitStrategy How the consumers wait for events, and the sessions wait for the consumers.
+     * @param consumers The consumers, each of which sees every event.
+     */
+    public EventBus(int ringSize, WaitStrategy waitStrategy, EventConsumer... consumers) {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("The ring size has to be a power of two, not " + ringSize);
+        }
+        this.ringSize = ringSize;
+        this.waitStrategy = waitStrategy;
+        this.consumers = consumers.clone();
+        inboxes = new ArrayList<>();
+        sessions = new AtomicLong();
+        openRings = new AtomicInteger();
+        handled = new AtomicLongArray(consumers.length);
+        stalls = new LongAdder();
+        running = true;
+        threads = new Thread[consumers.length];
+        for (int i = 0; i < consumers.length; i++) {
+            inboxes.add(new ConcurrentLinkedQueue<>());
+        }
+        for (int i = 0; i < consumers.length; i++) {
+            int consumer = i;
+            threads[i] = new Thread(() -> consume(consumer), "events-" + consumers[i].getClass().getSimpleName());
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    //Accessors
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    /**
+     * @return the number of sessions with a ring open.
+     */
+    public int getOpenRings() {
+        return openRings.get();
+    }
+
+    /**
+     * @param consumer The consumer's number, in the order they were given to the bus.
+     * @return the number of events the consumer has handled.
+     */
+    public long getHandled(int consumer) {
+        return handled.get(consumer);
+    }
+
+    /**
+     * @return the number of times a session had to wait for a consumer to catch up.
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * @return true once close() has stopped every consumer thread.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Opens a ring for a session to publish its events on.
+     *
+     * @param hunterName The hunter playing the session.
+     * @param mode The game mode.
+     * @return the ring, which the session closes when it is done with it.
+     */
+    public EventRing openRing(String hunterName, String mode) {
+        EventRing ring = new EventRing(this, sessions.incrementAndGet(), hunterName, mode, ringSize, consumers.length);
+        openRings.incrementAndGet();
+        for (ConcurrentLinkedQueue<EventRing> inbox : inboxes) {
+            inbox.add(ring);
+        }
+        return ring;
+    }
+
+    /**
+     * Counts a ring as closed; EventRing.close() calls this.
+     *
+     * @param ring The ring.
+     */
+    public void closed(EventRing ring) {
+        openRings.decrementAndGet();
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Counts a session having to wait for a consumer; EventRing calls this.
+     */
+    public void recordStall() {
+        stalls.increment();
+    }
+
+    /**
+     * Lets the consumers handle everything published so far, then stops their threads.<p>
+     * Sessions that publish after this no longer wait for anyone.
+     */
+    public void close() {
+        running = false;
+        waitStrategy.signalAll();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        stopped = true;
+    }
+
+    /**
+     * Runs one consumer: picks up new rings, goes round the open ones handing it their events, and waits
+     * when there is nothing to hand it. A ring is dropped once it is closed and the consumer has seen all of it.
+     *
+     * @param consumer The consumer's number.
+     */
+    private void consume(int consumer) {
+        EventConsumer handler = consumers[consumer];
+        ConcurrentLinkedQueue<EventRing> inbox = inboxes.get(consumer);
+        List<EventRing> rings = new ArrayList<>();
+        int attempts = 0;
+        while (true) {
+            // read before going round, so everything published before close() is handled
+            boolean stopping = !running;
+            for (EventRing ring = inbox.poll(); ring != null; ring = inbox.poll()) {
+                rings.add(ring);
+            }
+            long batch = 0;
+            for (int i = rings.size() - 1; i >= 0; i--) {
+                EventRing ring = rings.get(i);
+                boolean closed = ring.isClosed();
+                try {
+                    batch += ring.drain(consumer, handler);
+                    if (closed) {
+                        handler.onClose(ring);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Event consumer " + handler.getClass().getSimpleName() + " failed: " + e);
+                }
+                if (closed) {
+                    rings.set(i, rings.get(rings.size() - 1));
+                    rings.remove(rings.size() - 1);
+                }
+            }
+            if (batch > 0) {
+                handled.lazySet(consumer, handled.get(consumer) + batch);
+                waitStrategy.signalAll();
+                attempts = 0;
+            } else if (stopping) {
+                return;
+            } else {
+                waitStrategy.idle(attempts++);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        WaitStrategy waitStrategy = WaitStrategy.forName(args.length > 2 ? args[2] : "sleep");
+        int ringSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_RING_SIZE;
+
+        // warm up, then time the same games without a bus and with one
+        play(games / 10, threads, null);
+        long start = System.nanoTime();
+        play(games, threads, null);
+        long without = System.nanoTime() - start;
+
+        EventTally tally = new EventTally();
+        EventBus bus = new EventBus(ringSize, waitStrategy, tally);
+        start = System.nanoTime();
+        play(games, threads, bus);
+        long with = System.nanoTime() - start;
+        bus.close();
+
+        System.out.println(String.format("%,d games on %d threads: %.2f s without a bus, %.2f s with one",
+                games, threads, without / 1e9, with / 1e9));
+        System.out.println(String.format("%,d events handled (%.0f per game), %,d stalls on a full ring",
+                bus.getHandled(0), (double) bus.getHandled(0) / games, bus.getStalls()));
+        System.out.println(tally);
+    }
+
+    /**
+     * Plays random games on a pool of threads, publishing to a bus if there is one.
+     */
+    private static void play(int games, int threads, EventBus bus) {
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            int share = games / threads;
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                int count = t == threads - 1 ? games - share * (threads - 1) : share;
+                pool.execute(() -> {
+                    GameRandom random = new GameRandom(seed);
+                    RandomPolicy policy = new RandomPolicy("n", 200, random.split());
+                    for (int i = 0; i < count; i++) {
+                        TreasureHunter game = new TreasureHunter(policy, null, random);
+                        game.setEventBus(bus);
+                        game.play();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * An EventConsumer watches the GameEvents published on an EventBus, on a background thread of its own.<p>
+ * Each consumer sees every session's events in the order they were published, in batches: endOfBatch is
+ * true on the last event the consumer can see for now from that session, which is a good time to flush
+ * anything it has been buffering. A slow consumer slows the sessions down once their rings fill up,
+ * so the work done here should be cheap or batched.
+ */
+
+public interface EventConsumer {
+    /**
+     * Handles one event.
+     *
+     * @param session The ring the event was published on, which says whose game it came from.
+     * @param event The event, packed as described in GameEvent.
+     * @param endOfBatch Whether this is the last event available from this session for now.
+     */
+    void onEvent(EventRing session, long event, boolean endOfBatch);
+
+    /**
+     * Called once a session has closed its ring and every event on it has been handled.
+     *
+     * @param session The ring, which won't be published to again.
+     */
+    default void onClose(EventRing session) {
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The EventRing carries the GameEvents of one session to the consumers of an EventBus.<p>
+ * It is a ring of longs allocated once, when the session opens it, with a single writer: the thread playing
+ * the game. Publishing an event is one array store and one ordered write of the number published, with no
+ * lock and no allocation. Each consumer keeps its own count of the events it has handled, and a slot is only
+ * written again once every consumer is past it. If the consumers fall a whole ring behind, the session waits
+ * for them with the bus's WaitStrategy, so a slow consumer slows the games down instead of the ring growing
+ * or events being lost.
+ */
+
+public class EventRing {
+    // constants
+    private static final int PAD = 8; // longs between the consumers' counts, so they don't share a cache line
+
+    // instance variables
+    private EventBus bus;
+    private long id;
+    private String hunterName;
+    private String mode;
+    private long[] events;
+    private int mask;
+    private long next; // only touched by the session's thread
+    private long gate; // the slowest consumer's count the last time the session looked
+    private AtomicLong published;
+    private AtomicLongArray handled;
+    private volatile boolean closed;
+
+    /**
+     * Creates a ring; EventBus.openRing() is the way to get one.
+     *
+     * @param bus The bus the ring belongs to.
+     * @param id The session's number on the bus.
+     * @param hunterName The hunter playing the session.
+     * @param mode The game mode.
+     * @param size The number of events the ring holds, a power of two.
+     * @param consumers The number of consumers on the bus.
+     */
+    public EventRing(EventBus bus, long id, String hunterName, String mode, int size, int consumers) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("The ring size has to be a power of two, not " + size);
+        }
+        this.bus = bus;
+        this.id = id;
+        this.hunterName = hunterName;
+        this.mode = mode;
+        events = new long[size];
+        mask = size - 1;
+        published = new AtomicLong();
+        handled = new AtomicLongArray((consumers + 1) * PAD);
+    }
+
+    //Accessors
+    public long getId() {
+        return id;
+    }
+
+    public String getHunterName() {
+        return hunterName;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the number of events published on the ring so far.
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return true once the session has closed the ring.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Publishes an event; only the session's own thread may call this.<p>
+     * If the slowest consumer is a whole ring behind, this waits until it has caught up.
+     *
+     * @param event The event, packed by GameEvent.pack().
+     */
+    public void publish(long event) {
+        long sequence = next;
+        if (sequence - gate >= events.length) {
+            gate = awaitSpace(sequence);
+        }
+        events[(int) sequence & mask] = event;
+        next = sequence + 1;
+        published.lazySet(next);
+        bus.getWaitStrategy().signalAll();
+    }
+
+    /**
+     * Closes the ring once the session is over or paused; the consumers are told once they have handled the rest.
+     */
+    public void close() {
+        closed = true;
+        bus.closed(this);
+    }
+
+    /**
+     * Hands the events a consumer hasn't seen yet to it, in one batch; only the bus's consumer threads call this.<p>
+     * If the consumer throws, the rest of the batch is skipped.
+     *
+     * @param consumer The consumer's number on the bus.
+     * @param handler The consumer.
+     * @return the number of events in the batch.
+     */
+    public int drain(int consumer, EventConsumer handler) {
+        int index = (consumer + 1) * PAD;
+        long from = handled.get(index);
+        long to = published.get();
+        if (from == to) {
+            return 0;
+        }
+        try {
+            for (long sequence = from; sequence < to; sequence++) {
+                handler.onEvent(this, events[(int) sequence & mask], sequence + 1 == to);
+            }
+        } finally {
+            handled.lazySet(index, to);
+        }
+        return (int) (to - from);
+    }
+
+    /**
+     * Waits until the slowest consumer has handled the event that was in a slot, so it can be written again.
+     *
+     * @param sequence The number of the event about to be published.
+     * @return the slowest consumer's count.
+     */
+    private long awaitSpace(long sequence) {
+        int attempts = 0;
+        long slowest;
+        while (sequence - (slowest = slowest()) >= events.length) {
+            if (bus.isStopped()) {
+                // nobody is left to read the ring, so there is nothing to wait for
+                return sequence - events.length + 1;
+            }
+            if (attempts == 0) {
+                bus.recordStall();
+            }
+            bus.getWaitStrategy().idle(attempts++);
+        }
+        return slowest;
+    }
+
+    private long slowest() {
+        long slowest = Long.MAX_VALUE;
+        for (int index = PAD; index < handled.length(); index += PAD) {
+            slowest = Math.min(slowest, handled.get(index));
+        }
+        return slowest;
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The EventTally is an EventConsumer that counts the events on the bus by kind, and the gold that changed hands.<p>
+ * It only ever runs on its own consumer thread, so it counts with plain adds and just publishes the totals with
+ * ordered writes for other threads to read.
+ */
+
+public class EventTally implements EventConsumer {
+    // instance variables
+    private AtomicLongArray counts;
+    private AtomicLong goldGained;
+    private AtomicLong goldLost;
+    private AtomicLong sessions;
+
+    public EventTally() {
+        counts = new AtomicLongArray(GameEvent.values().length);
+        goldGained = new AtomicLong();
+        goldLost = new AtomicLong();
+        sessions = new AtomicLong();
+    }
+
+    public void onEvent(EventRing session, long event, boolean endOfBatch) {
+        GameEvent type = GameEvent.typeOf(event);
+        counts.lazySet(type.ordinal(), counts.get(type.ordinal()) + 1);
+        if (type == GameEvent.GOLD) {
+            int amount = GameEvent.amountOf(event);
+            if (amount >= 0) {
+                goldGained.lazySet(goldGained.get() + amount);
+            } else {
+                goldLost.lazySet(goldLost.get() - amount);
+            }
+        }
+    }
+
+    public void onClose(EventRing session) {
+        sessions.lazySet(sessions.get() + 1);
+    }
+
+    //Accessors
+    /**
+     * @param type A kind of event.
+     * @return the number of events of that kind seen so far.
+     */
+    public long getCount(GameEvent type) {
+        return counts.get(type.ordinal());
+    }
+
+    /**
+     * @return the gold hunters have gained through GOLD events.
+     */
+    public long getGoldGained() {
+        return goldGained.get();
+    }
+
+    /**
+     * @return the gold hunters have lost through GOLD events.
+     */
+    public long getGoldLost() {
+        return goldLost.get();
+    }
+
+    /**
+     * @return the number of sessions whose rings have closed.
+     */
+    public long getSessions() {
+        return sessions.get();
+    }
+
+    public String toString() {
+        String str = "Events:";
+        for (GameEvent type : GameEvent.values()) {
+            str += " " + type.name().toLowerCase() + " " + getCount(type);
+        }
+        return str + ", gold gained " + getGoldGained() + ", lost " + getGoldLost() + ", sessions closed " + getSessions();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * The GameEvent enum lists the changes to a game that are published on the EventBus.<p>
+ * An event travels through the bus packed into a single long, so publishing one allocates nothing:
+ * the low byte is the GameEvent, the next byte the Item involved (its ordinal + 1, or 0 for none),
+ * the next two bytes a detail and the high four bytes an amount of gold.<p>
+ * <ul>
+ * <li>GOLD: the amount is the change in the hunter's gold.</li>
+ * <li>BOUGHT and SOLD: the item, and the gold paid for it or paid out.</li>
+ * <li>TREASURE: the treasure found; the detail is 1 if it went in the collection.</li>
+ * <li>LEFT_TOWN: the item used to cross the terrain; the detail is the TownEvent, plus ITEM_BROKE.</li>
+ * <li>TROUBLE: the sword if it was drawn; the detail is the TownEvent, plus TOUGH_TOWN, and the amount the gold won or lost.</li>
+ * </ul>
+ */
+
+public enum GameEvent {
+    GOLD,
+    BOUGHT,
+    SOLD,
+    TREASURE,
+    LEFT_TOWN,
+    TROUBLE;
+
+    // constants
+    public static final int ITEM_BROKE = 1 << 8;
+    public static final int TOUGH_TOWN = 1 << 9;
+    private static final GameEvent[] EVENTS = values();
+
+    /**
+     * Packs an event into a long.
+     *
+     * @param item The item involved, or null.
+     * @param detail The detail, from 0 to 65535.
+     * @param amount The gold involved.
+     * @return the packed event.
+     */
+    public long pack(Item item, int detail, int amount) {
+        int itemCode = item == null ? 0 : item.ordinal() + 1;
+        return (long) amount << 32 | (detail & 0xFFFFL) << 16 | itemCode << 8 | ordinal();
+    }
+
+    /**
+     * @param event A packed event.
+     * @return which GameEvent it is.
+     */
+    public static GameEvent typeOf(long event) {
+        return EVENTS[(int) event & 0xFF];
+    }
+
+    /**
+     * @param event A packed event.
+     * @return the item involved, or null.
+     */
+    public static Item itemOf(long event) {
+        int itemCode = (int) (event >>> 8) & 0xFF;
+        return itemCode == 0 ? null : Item.fromOrdinal(itemCode - 1);
+    }
+
+    /**
+     * @param event A packed event.
+     * @return the detail.
+     */
+    public static int detailOf(long event) {
+        return (int) (event >>> 16) & 0xFFFF;
+    }
+
+    /**
+     * @param event A packed event.
+     * @return the gold involved.
+     */
+    public static int amountOf(long event) {
+        return (int) (event >>> 32);
+    }
+
+    /**
+     * Writes out a packed event, for logs and debugging.
+     *
+     * @param event A packed event.
+     * @return a description of the event.
+     */
+    public static String describe(long event) {
+        Item item = itemOf(event);
+        int detail = detailOf(event);
+        int amount = amountOf(event);
+        return switch (typeOf(event)) {
+            case GOLD -> "gold " + (amount >= 0 ? "+" : "") + amount;
+            case BOUGHT -> "bought " + item + " for " + amount;
+            case SOLD -> "sold " + item + " for " + amount;
+            case TREASURE -> "found " + item + ((detail & 1) != 0 ? "" : ", not kept");
+            case LEFT_TOWN -> TownEvent.values()[detail & 0xFF] + (item != null ? " with " + item : "")
+                    + ((detail & ITEM_BROKE) != 0 ? ", which broke" : "");
+            case TROUBLE -> TownEvent.values()[detail & 0xFF] + ((detail & TOUGH_TOWN) != 0 ? " in a tough town" : "")
+                    + (amount != 0 ? ", gold " + amount : "");
+        };
+    }
+}
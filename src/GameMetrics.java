@@ -0,0 +1,155 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The GameMetrics class counts what happens in every game running in this JVM.<p>
+ * It keeps a LatencyHistogram for each menu choice handled by TreasureHunter.processChoice and LongAdder
+ * counters for brawls, item breaks and gold, so many sessions can record at once without fighting over
+ * a lock. Metrics are off until register() is called, which also publishes them as JMX MBeans under
+ * the TreasureHunter domain. While they are off, recording costs one null check.
+ */
+
+public class GameMetrics implements GameMetricsMBean {
+    // constants
+    private static final String ACTIONS = "bsmlhdx";
+    private static final String[] ACTION_NAMES = {"buy", "sell", "move", "lookForTrouble", "hunt", "dig", "exit"};
+
+    // static variables
+    private static volatile GameMetrics current;
+
+    // instance variables
+    private LatencyHistogram[] actionLatency;
+    private LongAdder invalidChoices;
+    private LongAdder brawlsWon;
+    private LongAdder brawlsLost;
+    private LongAdder itemBreaks;
+    private LongAdder goldGained;
+    private LongAdder goldLost;
+
+    private GameMetrics() {
+        actionLatency = new LatencyHistogram[ACTIONS.length()];
+        for (int i = 0; i < actionLatency.length; i++) {
+            actionLatency[i] = new LatencyHistogram();
+        }
+        invalidChoices = new LongAdder();
+        brawlsWon = new LongAdder();
+        brawlsLost = new LongAdder();
+        itemBreaks = new LongAdder();
+        goldGained = new LongAdder();
+        goldLost = new LongAdder();
+    }
+
+    /**
+     * @return the metrics being recorded, or null if metrics are off.
+     */
+    public static GameMetrics current() {
+        return current;
+    }
+
+    /**
+     * Turns metrics on and registers them with the platform MBean server.
+     * Calling it again returns the metrics already registered.
+     *
+     * @return the metrics.
+     */
+    public static synchronized GameMetrics register() {
+        if (current == null) {
+            GameMetrics metrics = new GameMetrics();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.registerMBean(metrics, new ObjectName("TreasureHunter:type=GameMetrics"));
+                for (int i = 0; i < ACTION_NAMES.length; i++) {
+                    server.registerMBean(metrics.actionLatency[i], new ObjectName("TreasureHunter:type=ActionLatency,action=" + ACTION_NAMES[i]));
+                }
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register the game metrics.", e);
+            }
+            current = metrics;
+        }
+        return current;
+    }
+
+    /**
+     * Records a menu choice and how long it took to handle.
+     *
+     * @param choice The menu choice.
+     * @param nanos How long processChoice took, not counting any time spent waiting for the player's answers.
+     */
+    public void recordAction(String choice, long nanos) {
+        int action = choice.length() == 1 ? ACTIONS.indexOf(choice.charAt(0)) : -1;
+        if (action < 0) {
+            invalidChoices.increment();
+        } else {
+            actionLatency[action].record(nanos);
+        }
+    }
+
+    public void recordBrawl(boolean won) {
+        if (won) {
+            brawlsWon.increment();
+        } else {
+            brawlsLost.increment();
+        }
+    }
+
+    public void recordItemBreak() {
+        itemBreaks.increment();
+    }
+
+    /**
+     * Records gold going into or out of a hunter's purse.
+     *
+     * @param modifier The change in gold.
+     */
+    public void recordGold(int modifier) {
+        if (modifier > 0) {
+            goldGained.add(modifier);
+        } else if (modifier < 0) {
+            goldLost.add(-modifier);
+        }
+    }
+
+    /**
+     * @param choice The menu choice.
+     * @return the latency histogram of the choice, or null if it isn't a menu choice.
+     */
+    public LatencyHistogram getActionLatency(char choice) {
+        int action = ACTIONS.indexOf(choice);
+        return action < 0 ? null : actionLatency[action];
+    }
+
+    public long getActions() {
+        long actions = invalidChoices.sum();
+        for (LatencyHistogram histogram : actionLatency) {
+            actions += histogram.getCount();
+        }
+        return actions;
+    }
+
+    public long getInvalidChoices() {
+        return invalidChoices.sum();
+    }
+
+    public long getBrawlsWon() {
+        return brawlsWon.sum();
+    }
+
+    public long getBrawlsLost() {
+        return brawlsLost.sum();
+    }
+
+    public long getItemBreaks() {
+        return itemBreaks.sum();
+    }
+
+    public long getGoldGained() {
+        return goldGained.sum();
+    }
+
+    public long getGoldLost() {
+        return goldLost.sum();
+    }
+}
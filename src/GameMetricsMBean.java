@@ -0,0 +1,19 @@
+/**
+ * The JMX view of the GameMetrics counters.
+ */
+
+public interface GameMetricsMBean {
+    long getActions();
+
+    long getInvalidChoices();
+
+    long getBrawlsWon();
+
+    long getBrawlsLost();
+
+    long getItemBreaks();
+
+    long getGoldGained();
+
+    long getGoldLost();
+}
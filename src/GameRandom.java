@@ -0,0 +1,87 @@
+/**
+ * The GameRandom class is where every random roll in the game comes from.<p>
+ * It is a small SplitMix64 generator: it can be seeded so a game can be played again exactly,
+ * and split so that every worker in a parallel simulation gets its own generator.<p>
+ * A GameRandom is not thread safe; each game or worker should have its own.
+ */
+
+public class GameRandom {
+    // constants
+    public static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; // how far the seed moves for every roll
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    // instance variables
+    private long seed;
+
+    /**
+     * Creates a generator with a seed that is different every time.
+     */
+    public GameRandom() {
+        this(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+    }
+
+    /**
+     * Creates a generator that always produces the same rolls for the same seed.
+     *
+     * @param seed The starting seed.
+     */
+    public GameRandom(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the current seed; a generator created with it rolls the same numbers from here on.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return a random long.
+     */
+    public long nextLong() {
+        seed += GOLDEN_GAMMA;
+        return mix64(seed);
+    }
+
+    /**
+     * Works the same way as Math.random().
+     *
+     * @return a random double from 0 (inclusive) to 1 (exclusive).
+     */
+    public double nextDouble() {
+        return toDouble(nextLong());
+    }
+
+    /**
+     * Turns a random long into a double the way nextDouble() does.
+     *
+     * @param bits A random long.
+     * @return a double from 0 (inclusive) to 1 (exclusive).
+     */
+    public static double toDouble(long bits) {
+        return (bits >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Creates a new generator seeded from this one.<p>
+     * The two generators then roll independently of each other.
+     *
+     * @return the new generator.
+     */
+    public GameRandom split() {
+        return new GameRandom(nextLong());
+    }
+
+    /**
+     * Scrambles the bits of a seed (the SplitMix64 finalizer).
+     *
+     * @param z The value to scramble.
+     * @return the scrambled value.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The GameServer hosts many Treasure Hunter players in one JVM.<p>
+ * Players connect over a local TCP socket (for example with telnet or nc) and each session runs on its own
+ * virtual thread, reading from and printing to its socket instead of the console. An idle player is just a
+ * virtual thread parked on a socket read, so tens of thousands of sessions can be open at once.<p>
+ * Every few seconds the server reports how many sessions are open and roughly how much heap each one uses.
+ * The server also turns on GameMetrics, so action latencies and outcomes can be watched over JMX.<p>
+ * Every finished game goes on a Leaderboard shared by all the sessions, which is flushed to disk with each report.<p>
+ * A player who sits at the menu for longer than the park timeout has their game parked in a SessionStore,
+ * off the heap, until they send their next move; all that is left on the heap meanwhile is the socket and
+ * the session's virtual thread waiting on it.<p>
+ * Every session publishes its game's events on an EventBus, where an EventTally counts them for the report.<p>
+ * Every decision a player makes is written to a WriteAheadLog before the game acts on it. When the server starts
+ * again the games that were in progress are recovered from the log, and a player who comes back and gives their
+ * hunter's name carries on where they were.<p>
+ * The server also turns on the Market, so the prices in every town move with what all the players buy and sell.<p>
+ * Every game is played on one SharedWorld, so the players meet in the same towns and race each other for their
+ * treasure, their gold and their brawlers.
+ */
+
+public class GameServer {
+    // constants
+    private static final int BUFFER_SIZE = 2048;
+    private static final int BACKLOG = 1024;
+
+    // instance variables
+    private ServerSocket serverSocket;
+    private AtomicInteger activeSessions;
+    private AtomicLong totalSessions;
+    private Leaderboard leaderboard;
+    private EventBus eventBus;
+    private EventTally tally;
+    private SessionStore store;
+    private WriteAheadLog log;
+    private SharedWorld sharedWorld;
+    private ConcurrentHashMap<String, ConcurrentLinkedQueue<WriteAheadLog.Recovered>> recovered;
+    private AtomicInteger unclaimed;
+    private int parkMillis;
+    private long baselineHeap;
+
+    /**
+     * Opens the server socket on the loopback address.
+     *
+     * @param port The port to listen on.
+     * @param leaderboard Where finished games are recorded, or null to keep no record.
+     * @param eventBus Where the games' events are published, or null to publish nothing.
+     * @param tally The consumer on the bus whose counts are reported, or null.
+     * @param store Where idle games are parked, or null to keep every game on the heap.
+     * @param parkMillis How long a player can be idle at the menu before their game is parked.
+     * @param log Where every decision is logged, or null to lose the games in progress if the server stops.
+     * @param sharedWorld The world every game is played on, or null for each game to have a world of its own.
+     */
+    public GameServer(int port, Leaderboard leaderboard, EventBus eventBus, EventTally tally, SessionStore store, int parkMillis, WriteAheadLog log, SharedWorld sharedWorld) throws IOException {
+        serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.leaderboard = leaderboard;
+        this.eventBus = eventBus;
+        this.tally = tally;
+        this.store = store;
+        this.parkMillis = parkMillis;
+        this.log = log;
+        this.sharedWorld = sharedWorld;
+        recovered = new ConcurrentHashMap<>();
+        unclaimed = new AtomicInteger();
+        if (log != null) {
+            List<WriteAheadLog.Recovered> games = log.getRecovered();
+            for (WriteAheadLog.Recovered game : games) {
+                recovered.computeIfAbsent(game.getHunterName(), name -> new ConcurrentLinkedQueue<>()).add(game);
+            }
+            unclaimed.set(games.size());
+        }
+        activeSessions = new AtomicInteger();
+        totalSessions = new AtomicLong();
+        System.gc();
+        baselineHeap = liveHeap();
+    }
+
+    /**
+     * Accepts players until the server socket is closed, starting a virtual thread for each one.
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket = serverSocket.accept();
+            long id = totalSessions.incrementAndGet();
+            Thread.ofVirtual().name("session-" + id).start(() -> runSession(socket));
+        }
+    }
+
+    /**
+     * Plays one game over a socket, then hangs up.<p>
+     * Whenever the player goes idle at the menu the game is parked, and brought back once they send something.<p>
+     * If there are games recovered from the log that nobody has claimed yet, the player is asked first whether
+     * one of them is theirs.
+     *
+     * @param socket The player's connection.
+     */
+    private void runSession(Socket socket) {
+        activeSessions.incrementAndGet();
+        try (socket) {
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE), false, StandardCharsets.UTF_8);
+            if (store != null) {
+                socket.setSoTimeout(parkMillis);
+            }
+            SocketPolicy socketPolicy = new SocketPolicy(socket, out);
+            Policy policy = socketPolicy;
+            DurablePolicy durable = null;
+            TreasureHunter game;
+            WriteAheadLog.Recovered returning = claim(socketPolicy, out);
+            if (returning != null) {
+                durable = new DurablePolicy(socketPolicy, log, returning.getSession());
+                policy = durable;
+                game = SessionSnapshot.restore(returning.getSnapshot(), policy, out);
+                attach(game);
+                game.resume();
+            } else {
+                GameRandom random = new GameRandom();
+                if (log != null) {
+                    durable = new DurablePolicy(socketPolicy, log, log.begin(random.getSeed()));
+                    policy = durable;
+                }
+                game = new TreasureHunter(policy, out, random);
+                attach(game);
+                game.play();
+            }
+            while (game.isPaused()) {
+                int slot = store.park(game);
+                if (slot >= 0) {
+                    game = null;
+                    socketPolicy.awaitInput();
+                    game = store.unpark(slot, policy, out);
+                    attach(game);
+                } else {
+                    // the store is full, so this game just stays on the heap
+                    socketPolicy.awaitInput();
+                }
+                game.resume();
+            }
+            if (durable != null) {
+                durable.end();
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the player hung up; nothing to clean up but the socket
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Offers a new player the games recovered from the log, if any are left.
+     *
+     * @param policy Where the player's answer comes from.
+     * @param out Where the question is printed.
+     * @return the player's recovered game, or null to start a new one.
+     */
+    private WriteAheadLog.Recovered claim(SocketPolicy policy, PrintStream out) {
+        if (unclaimed.get() == 0) {
+            return null;
+        }
+        out.print("The server restarted while some games were being played. If one was yours, enter your hunter's name to carry on, or just press enter to start a new game: ");
+        String name = policy.chooseName();
+        ConcurrentLinkedQueue<WriteAheadLog.Recovered> games = recovered.get(name);
+        WriteAheadLog.Recovered game = games == null ? null : games.poll();
+        if (game != null) {
+            unclaimed.decrementAndGet();
+            out.println("Welcome back, " + game.getHunterName() + "!");
+        }
+        return game;
+    }
+
+    /**
+     * @return the number of sessions currently open.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Estimates the heap used by each open session from the heap still live after the last garbage collection.
+     *
+     * @return bytes per session, or 0 if no sessions are open.
+     */
+    public long getBytesPerSession() {
+        int sessions = activeSessions.get();
+        if (sessions == 0) {
+            return 0;
+        }
+        return Math.max(0, liveHeap() - baselineHeap) / sessions;
+    }
+
+    /**
+     * Adds up the heap that was still in use after the last collection of each heap memory pool.
+     *
+     * @return the live heap in bytes.
+     */
+    private static long liveHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    used += usage.getUsed();
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Hands a game everything the sessions share, before it is played or resumed.
+     *
+     * @param game The game.
+     */
+    private void attach(TreasureHunter game) {
+        game.setLeaderboard(leaderboard);
+        game.setEventBus(eventBus);
+        game.setSharedWorld(sharedWorld);
+    }
+
+    /**
+     * Prints the number of sessions and the memory per session every few seconds.
+     *
+     * @param seconds How often to report.
+     */
+    private void startReporting(int seconds) {
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(seconds * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                String parked = store == null ? "" : ", parked: " + store.getParked() + " in " + (store.getOffHeapBytes() >> 10) + " KB off the heap";
+                System.out.println("Sessions open: " + getActiveSessions() + ", total: " + totalSessions.get()
+                        + ", heap per session: ~" + getBytesPerSession() + " bytes" + parked);
+                if (tally != null) {
+                    System.out.println(tally);
+                }
+                Market market = Market.current();
+                if (market != null) {
+                    System.out.println(market);
+                }
+                if (sharedWorld != null) {
+                    System.out.println("Towns visited on the shared world: " + sharedWorld.getTownCount());
+                }
+                if (log != null) {
+                    System.out.println("Logged " + log.getRecords() + " records in " + log.getCommits() + " fsyncs, "
+                            + unclaimed.get() + " recovered games not claimed yet");
+                }
+                if (leaderboard != null) {
+                    leaderboard.flush();
+                }
+            }
+        }, "session-report");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Starts a server.<p>
+     * Usage: GameServer [port] [reportSeconds] [leaderboardFile] [parkSeconds] [maxParked] [logFile] [worldSeed]<p>
+     * A park timeout of 0 keeps every game on the heap, and a log file of "none" logs nothing.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4242;
+        int reportSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Path leaderboardFile = Paths.get(args.length > 2 ? args[2] : "leaderboard.dat");
+        int parkSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int maxParked = args.length > 4 ? Integer.parseInt(args[4]) : 1 << 22;
+        String logFile = args.length > 5 ? args[5] : "sessions.wal";
+        long worldSeed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+        SessionStore store = parkSeconds > 0 ? new SessionStore(maxParked, SessionStore.DEFAULT_SLOT_SIZE) : null;
+
+        GameMetrics.register();
+        Leaderboard leaderboard = new Leaderboard(leaderboardFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(leaderboard::close));
+        EventTally tally = new EventTally();
+        EventBus eventBus = new EventBus(EventBus.DEFAULT_RING_SIZE, WaitStrategy.sleeping(), tally);
+        Runtime.getRuntime().addShutdownHook(new Thread(eventBus::close));
+        WriteAheadLog log = null;
+        if (!logFile.equals("none")) {
+            log = new WriteAheadLog(Paths.get(logFile));
+            System.out.println("Recovered " + log.getRecovered().size() + " games in progress from " + logFile);
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+        }
+        Market.start(Market.DEFAULT_PERIOD_MILLIS);
+        GameServer server = new GameServer(port, leaderboard, eventBus, tally, store, parkSeconds * 1000, log, new SharedWorld(worldSeed));
+        System.out.println("Treasure Hunter server listening on " + server.serverSocket.getLocalSocketAddress());
+        server.startReporting(reportSeconds);
+        server.serve();
+    }
+}
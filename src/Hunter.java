@@ -1,16 +1,23 @@
 /**
  * Hunter Class<br /><br />
  * This class represents the treasure hunter character (the player) in the Treasure Hunt game.
- * This code has been adapted from Ivan Turner's original program -- thank you, Mr. Turner!
+ * This code has been adapted from Ivan Turner's original program -- thank you, Mr. Turner!<p>
+ * The kit and the collection are stored as bitmasks with one bit per Item, so checking, adding and
+ * removing an item is a single bit operation. The String[] methods are kept as adapters over the masks.<p>
+ * While the hunter has an EventRing, every change to their gold, kit and collection is published on it as a GameEvent.
  */
 
 public class Hunter {
     //instance variables
     private String hunterName;
-    private String[] kit;
-    private String[] collection;
+    private int kit;
+    private int collection;
+    private String[] kitView;
+    private String[] collectionView;
+    private boolean viewsChanged;
     private int gold;
     private boolean broke;
+    private EventRing events;
 
     /**
      * The base constructor of a Hunter assigns the name to the hunter and an empty kit.
@@ -20,16 +27,49 @@ public class Hunter {
      */
     public Hunter(String hunterName, int startingGold) {
         this.hunterName = hunterName;
-        collection = new String[3];
+        kitView = new String[7];
+        collectionView = new String[3];
         gold = startingGold;
     }
 
     public void setHunterMode(String mode) {
         if (mode.equals("s")) {
-            kit = new String[8];
+            kitView = new String[8];
         } else {
-            kit = new String[7]; // only 7 possible items can be stored in kit unless samurai then 8
+            kitView = new String[7]; // only 7 possible items can be stored in kit unless samurai then 8
         }
+        viewsChanged = true;
+    }
+
+    /**
+     * Puts the hunter's gold, kit and collection back the way a SessionSnapshot saved them.
+     *
+     * @param gold The gold.
+     * @param kitMask The kit as a mask of Item bits.
+     * @param collectionMask The collection as a mask of Item bits.
+     */
+    public void restore(int gold, int kitMask, int collectionMask) {
+        this.gold = gold;
+        kit = kitMask;
+        collection = collectionMask;
+        broke = gold < 0;
+        viewsChanged = true;
+    }
+
+    /**
+     * Sets the ring the hunter's GameEvents are published on.
+     *
+     * @param events The ring, or null to publish nothing.
+     */
+    public void setEvents(EventRing events) {
+        this.events = events;
+    }
+
+    /**
+     * @return the ring the hunter's GameEvents are published on, or null.
+     */
+    public EventRing getEvents() {
+        return events;
     }
 
     /**
@@ -45,20 +85,67 @@ public class Hunter {
         return hunterName;
     }
 
+    public int getGold() {
+        return gold;
+    }
+
+    /**
+     * @return the kit as a mask of Item bits.
+     */
+    public int getKitMask() {
+        return kit;
+    }
+
     /**
+     * @return the collection as a mask of Item bits.
+     */
+    public int getCollectionMask() {
+        return collection;
+    }
+
+    /**
+     * Returns the kit as an array of item names, in catalog order.<p>
+     * The same array is returned every time and is brought up to date on each call.
      *
-     * @return collection
+     * @return kit
      */
     public String[] getKit() {
-        return kit;
+        updateViews();
+        return kitView;
     }
 
     /**
+     * Returns the collection as an array of treasure names, in catalog order.<p>
+     * The same array is returned every time and is brought up to date on each call.
      *
      * @return collection
      */
     public String[] getCollection() {
-        return collection;
+        updateViews();
+        return collectionView;
+    }
+
+    /**
+     * @param item The item to look for.
+     * @return true if the item is in the kit.
+     */
+    public boolean hasItem(Item item) {
+        return (kit & item.getBit()) != 0;
+    }
+
+    /**
+     * @param treasure The treasure to look for.
+     * @return true if the treasure is in the collection.
+     */
+    public boolean hasTreasure(Item treasure) {
+        return (collection & treasure.getBit()) != 0;
+    }
+
+    /**
+     * @return true if all three treasures are in the collection.
+     */
+    public boolean hasAllTreasures() {
+        return collection == Item.TREASURES;
     }
 
     /**
@@ -67,10 +154,17 @@ public class Hunter {
      * @param modifier Amount to modify gold by.
      */
     public void changeGold(int modifier) {
+        GameMetrics metrics = GameMetrics.current();
+        if (metrics != null) {
+            metrics.recordGold(modifier);
+        }
         gold += modifier;
         if (gold < 0) {
             broke = true;
         }
+        if (events != null) {
+            events.publish(GameEvent.GOLD.pack(null, 0, modifier));
+        }
     }
 
     /**
@@ -81,18 +175,28 @@ public class Hunter {
      * @return true if the item is successfully bought.
      */
     public boolean buyItem(String item, int costOfItem, String mode) {
-        if ((costOfItem == 0 && !item.equals("sword")) || (gold < costOfItem && !mode.equals("s")) || hasItemInContainer(item, kit)) {
+        return buyItem(Item.fromName(item), costOfItem, mode);
+    }
+
+    /**
+     * Buys an item from a shop.
+     *
+     * @param item The item the hunter is buying, or null if there is no such item.
+     * @param costOfItem The cost of the item.
+     * @return true if the item is successfully bought.
+     */
+    public boolean buyItem(Item item, int costOfItem, String mode) {
+        if (item == null || (costOfItem == 0 && item != Item.SWORD) || (gold < costOfItem && !mode.equals("s")) || hasItem(item)) {
             return false;
         }
-        if (!mode.equals("s") || item.equals("sword")) {
+        if (!mode.equals("s") || item == Item.SWORD) {
             gold -= costOfItem;
-        } else {
-            System.out.println(Colors.GREEN + "Wait, what are you doing? Why are you pulling out that sword?");
-            String[] fragileItems = {"water", "rope", "boots", "shovel", "a lampshade", "a painting"};
-            int randItem = (int) (Math.random() * 6);
-            System.out.println("You slash " + fragileItems[randItem] + ". You are given " + Colors.PURPLE + item + Colors.GREEN + " for free." + Colors.RESET);
         }
-        addItem(item, kit);
+        // otherwise the samurai slashes the shopkeeper's wares and gets the item for free
+        addItem(item);
+        if (events != null) {
+            events.publish(GameEvent.BOUGHT.pack(item, 0, !mode.equals("s") || item == Item.SWORD ? costOfItem : 0));
+        }
         return true;
     }
 
@@ -105,64 +209,128 @@ public class Hunter {
      * @return true if the item was successfully sold.
      */
     public boolean sellItem(String item, int buyBackPrice) {
-        if (buyBackPrice <= 0 || !hasItemInContainer(item, kit)) {
+        return sellItem(Item.fromName(item), buyBackPrice);
+    }
+
+    /**
+     * The Hunter is selling an item to a shop for gold.
+     *
+     * @param item The item being sold, or null if there is no such item.
+     * @param buyBackPrice the amount of gold earned from selling the item
+     * @return true if the item was successfully sold.
+     */
+    public boolean sellItem(Item item, int buyBackPrice) {
+        if (buyBackPrice <= 0 || item == null || !hasItem(item)) {
             return false;
         }
 
         gold += buyBackPrice;
-        removeItemFromContainer(item, kit);
+        removeItem(item);
+        if (events != null) {
+            events.publish(GameEvent.SOLD.pack(item, 0, buyBackPrice));
+        }
         return true;
     }
 
     /**
-     * Removes an item from the container by setting the index of the item to null.
+     * Removes an item from the kit.
+     *
+     * @param item The item to be removed.
+     */
+    public void removeItem(Item item) {
+        kit &= ~item.getBit();
+        viewsChanged = true;
+    }
+
+    /**
+     * Removes an item from the container.<p>
+     * The kit and collection arrays clear the item's bit; any other array has the item's index set to null.
      *
      * @param item The item to be removed.
      * @param container The container to remove the item from.
      */
     public void removeItemFromContainer(String item, String[] container) {
-        int itmIdx = findItemInContainer(item, container);
+        Item removed = Item.fromName(item);
+        if (container == kitView) {
+            if (removed != null) {
+                removeItem(removed);
+            }
+        } else if (container == collectionView) {
+            if (removed != null) {
+                collection &= ~removed.getBit();
+                viewsChanged = true;
+            }
+        } else {
+            int itmIdx = findItemInContainer(item, container);
 
-        // if item is found
-        if (itmIdx >= 0) {
-            container[itmIdx] = null;
+            // if item is found
+            if (itmIdx >= 0) {
+                container[itmIdx] = null;
+            }
         }
     }
 
     /**
-     * Checks to make sure that the item is not already in the container.
-     * If not, it assigns the item to an index in the container with a null value ("empty" position).
+     * Adds an item to the kit.
      *
-     * @param item The item to be added to the container.
-     * @param container The container the item gets added to.
-     * @return true if the item is not in the container and has been added.
+     * @param item The item to be added to the kit.
+     * @return true if the item was not in the kit and has been added.
      */
-    private boolean addItem(String item, String[] container) {
-        if (!hasItemInContainer(item, container)) {
-            int idx = emptyPositionInContainer(container);
-            container[idx] = item;
+    private boolean addItem(Item item) {
+        if (!hasItem(item)) {
+            kit |= item.getBit();
+            viewsChanged = true;
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Adds a treasure to the collection by name.
+     *
+     * @param treasure The name of the treasure found.
+     * @return true if the treasure was worth keeping, or false if there is no item with that name.
+     */
     public boolean addTreasure(String treasure) {
-        if (!treasure.equals("dust")) {
-            addItem(treasure, collection);
-            return true;
+        Item item = Item.fromName(treasure);
+        return item != null && addTreasure(item);
+    }
+
+    /**
+     * Adds a treasure to the collection, unless it is dust.
+     *
+     * @param treasure The treasure found.
+     * @return true if the treasure was worth keeping.
+     */
+    public boolean addTreasure(Item treasure) {
+        boolean kept = treasure != Item.DUST;
+        if (kept) {
+            collection |= treasure.getBit();
+            viewsChanged = true;
         }
-        return false;
+        if (events != null) {
+            events.publish(GameEvent.TREASURE.pack(treasure, kept ? 1 : 0, 0));
+        }
+        return kept;
     }
 
     /**
-     * Checks if the container Array has the specified item.
+     * Checks if the container Array has the specified item.<p>
+     * For the kit and collection arrays this is a single bit test.
      *
      * @param item The search item
      * @param container The search container
      * @return true if the item is found.
      */
     public boolean hasItemInContainer(String item, String[] container) {
+        if (container == kitView || container == collectionView) {
+            Item found = Item.fromName(item);
+            if (found == null) {
+                return false;
+            }
+            return container == kitView ? hasItem(found) : hasTreasure(found);
+        }
         for (String tmpItem : container) {
             if (item != null && item.equals(tmpItem)) {
                 // early return
@@ -180,6 +348,9 @@ public class Hunter {
      * @return The printable String representation of the container.
      */
     public String getContainer(String[] container) {
+        if (container == kitView || container == collectionView) {
+            updateViews();
+        }
         String printableContainer = Colors.PURPLE + "";
         String space = " ";
 
@@ -198,12 +369,12 @@ public class Hunter {
      */
     public String toString() {
         String str = hunterName + " has " + Colors.YELLOW + gold + Colors.RESET + " gold";
-        if (!containerIsEmpty(kit)) {
-            str += " and " +  Colors.PURPLE + getContainer(kit) + Colors.RESET;
+        if (kit != 0) {
+            str += " and " +  Colors.PURPLE + getContainer(kitView) + Colors.RESET;
         }
         str += "\nTreasures found:";
-        if (!containerIsEmpty(collection)) {
-            str += " a " +  Colors.PURPLE + getContainer(collection) + Colors.RESET;
+        if (collection != 0) {
+            str += " a " +  Colors.PURPLE + getContainer(collectionView) + Colors.RESET;
         } else {
             str += " none";
         }
@@ -230,33 +401,31 @@ public class Hunter {
     }
 
     /**
-     * Check if the kit is empty - meaning all elements are null.
-     *
-     * @param container Array to look through.
-     * @return true if kit is completely empty.
+     * Rewrites the kit and collection arrays from the masks, if either mask has changed since the last time.
      */
-    private boolean containerIsEmpty(String[] container) {
-        for (String string : container) {
-            if (string != null) {
-                return false;
-            }
+    private void updateViews() {
+        if (viewsChanged) {
+            fillView(kit, kitView);
+            fillView(collection, collectionView);
+            viewsChanged = false;
         }
-
-        return true;
     }
 
     /**
-     * Finds the first index where there is a null value.
+     * Fills an array with the names of the items in a mask, followed by nulls.
      *
-     * @return index of empty index, or -1 if not found.
+     * @param mask The items to list.
+     * @param view The array to fill.
      */
-    private int emptyPositionInContainer(String[] container) {
-        for (int i = 0; i < container.length; i++) {
-            if (container[i] == null) {
-                return i;
-            }
+    private void fillView(int mask, String[] view) {
+        int idx = 0;
+        while (mask != 0 && idx < view.length) {
+            int ordinal = Integer.numberOfTrailingZeros(mask);
+            view[idx++] = Item.fromOrdinal(ordinal).getName();
+            mask &= mask - 1;
+        }
+        while (idx < view.length) {
+            view[idx++] = null;
         }
-
-        return -1;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+/**
+ * The Item enum is the catalog of everything a hunter can carry.<p>
+ * The first eight are the items sold in the shop and go in the hunter's kit; the rest are the treasures
+ * that can be found in a town. Every item has its own bit, so a whole kit or collection fits in one int.
+ */
+
+public enum Item {
+    WATER("water"),
+    ROPE("rope"),
+    BOOTS("boots"),
+    MACHETE("machete"),
+    SHOVEL("shovel"),
+    HORSE("horse"),
+    BOAT("boat"),
+    SWORD("sword"),
+    CROWN("crown"),
+    TROPHY("trophy"),
+    GEM("gem"),
+    DUST("dust");
+
+    // constants
+    public static final int TREASURES = CROWN.bit | TROPHY.bit | GEM.bit; // the collection needed to win
+
+    private static final Item[] VALUES = values();
+
+    // instance variables
+    private final String name;
+    private final int bit;
+
+    Item(String name) {
+        this.name = name;
+        bit = 1 << ordinal();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the bit of this item in a kit or collection mask.
+     */
+    public int getBit() {
+        return bit;
+    }
+
+    /**
+     * Looks an item up by its name.
+     *
+     * @param name The name of the item, in lower case.
+     * @return the item, or null if there is no such item.
+     */
+    public static Item fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        return switch (name) {
+            case "water" -> WATER;
+            case "rope" -> ROPE;
+            case "boots" -> BOOTS;
+            case "machete" -> MACHETE;
+            case "shovel" -> SHOVEL;
+            case "horse" -> HORSE;
+            case "boat" -> BOAT;
+            case "sword" -> SWORD;
+            case "crown" -> CROWN;
+            case "trophy" -> TROPHY;
+            case "gem" -> GEM;
+            case "dust" -> DUST;
+            default -> null;
+        };
+    }
+
+    /**
+     * Looks an item up by its ordinal.
+     *
+     * @param ordinal The ordinal of the item.
+     * @return the item.
+     */
+    public static Item fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * @return the name of the item, the way it is shown to the player.
+     */
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,63 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Journal class holds the binary format shared by the JournalWriter and the JournalReplay.<p>
+ * A journal starts with a header (magic number, version and the game's seed), followed by one record for
+ * every decision the policy made, and ends with the final state of the Hunter so a replay can be checked.<p>
+ * Decisions are stored as compactly as possible: a one letter answer (every menu choice and every y/n) is
+ * a single byte, an Item is two bytes, and anything else the player typed is stored as UTF-8.
+ */
+
+public class Journal {
+    // constants
+    public static final int MAGIC = 0x54484A31; // "THJ1"
+    public static final int VERSION = 4;
+    public static final int HEADER_SIZE = 13;
+
+    // record tags; single printable letters are stored as themselves
+    public static final int END = 0x00;
+    public static final int ITEM = 0x01;
+    public static final int TEXT = 0x02;
+    public static final int EMPTY = 0x03;
+
+    /**
+     * Finds the one byte code of an item, which is its ordinal in the Item catalog.
+     *
+     * @param item The item name.
+     * @return the code of the item, or -1 if it is not in the catalog.
+     */
+    public static int itemCode(String item) {
+        Item found = Item.fromName(item);
+        return found == null ? -1 : found.ordinal();
+    }
+
+    /**
+     * Describes the state of a Hunter in the same way it is stored at the end of a journal.
+     *
+     * @param hunter The Hunter to describe.
+     * @return gold, kit and collection as plain text.
+     */
+    public static String describe(Hunter hunter) {
+        return hunter.getGold() + " gold, kit [" + join(hunter.getKit()) + "], collection [" + join(hunter.getCollection()) + "]";
+    }
+
+    /**
+     * @return the UTF-8 bytes of a string.
+     */
+    public static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String join(String[] container) {
+        String str = "";
+        for (String item : container) {
+            if (item != null) {
+                if (!str.isEmpty()) {
+                    str += " ";
+                }
+                str += item;
+            }
+        }
+        return str;
+    }
+}
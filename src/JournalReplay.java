@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * The JournalReplay plays a recorded game again from its journal.<p>
+ * It acts as the policy of a headless game seeded with the journal's seed, handing back the recorded
+ * decisions one by one, so the game runs at full CPU speed. Once the game is over the state of the
+ * Hunter is checked against the state recorded at the end of the journal.
+ */
+
+public class JournalReplay implements Policy {
+    // instance variables
+    private byte[] journal;
+    private int position;
+    private long seed;
+    private int decisions;
+
+    /**
+     * Reads the header of a journal.
+     *
+     * @param journal The bytes of the whole journal.
+     */
+    public JournalReplay(byte[] journal) {
+        this.journal = journal;
+        if (readInt() != Journal.MAGIC) {
+            throw new IllegalArgumentException("Not a Treasure Hunter journal.");
+        }
+        int version = readByte();
+        if (version != Journal.VERSION) {
+            throw new IllegalArgumentException("Unsupported journal version " + version + ".");
+        }
+        seed = readLong();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of decisions replayed so far.
+     */
+    public int getDecisions() {
+        return decisions;
+    }
+
+    public String chooseName() {
+        return next();
+    }
+
+    public String chooseMode() {
+        return next();
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        return next();
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return next();
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return next();
+    }
+
+    /**
+     * Replays the whole journal without printing anything.
+     *
+     * @return the game, once it is over.
+     */
+    public TreasureHunter replay() {
+        TreasureHunter game = new TreasureHunter(this, null, new GameRandom(seed));
+        game.play();
+        return game;
+    }
+
+    /**
+     * Checks a replayed game against the final state recorded in the journal.
+     *
+     * @param game The replayed game.
+     * @return null if the states match, otherwise a description of the difference.
+     */
+    public String verify(TreasureHunter game) {
+        if (position >= journal.length || journal[position] != Journal.END) {
+            return "the game ended before the journal did";
+        }
+        position++;
+        String recorded = readText();
+        String replayed = Journal.describe(game.getHunter());
+        if (!recorded.equals(replayed)) {
+            return "recorded " + recorded + " but replayed " + replayed;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next recorded decision.<p>
+     * If the journal runs out (for example because it was cut short) the hunter gives up the hunt.
+     *
+     * @return the decision.
+     */
+    private String next() {
+        if (position >= journal.length || journal[position] == Journal.END) {
+            return "x";
+        }
+        decisions++;
+        int tag = readByte();
+        if (tag == Journal.EMPTY) {
+            return "";
+        } else if (tag == Journal.ITEM) {
+            return Item.fromOrdinal(readByte()).getName();
+        } else if (tag == Journal.TEXT) {
+            return readText();
+        }
+        return String.valueOf((char) tag);
+    }
+
+    private String readText() {
+        int length = (readByte() << 8) | readByte();
+        String text = new String(journal, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return text;
+    }
+
+    private int readByte() {
+        return journal[position++] & 0xFF;
+    }
+
+    private int readInt() {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Replays every journal given on the command line and checks its final state.<p>
+     * Usage: JournalReplay journal...
+     */
+    public static void main(String[] args) throws IOException {
+        boolean allMatched = true;
+        for (String file : args) {
+            JournalReplay replay = new JournalReplay(Files.readAllBytes(Paths.get(file)));
+            long start = System.nanoTime();
+            TreasureHunter game = replay.replay();
+            long elapsed = System.nanoTime() - start;
+            String difference = replay.verify(game);
+            if (difference == null) {
+                System.out.println(file + ": OK, " + replay.getDecisions() + " decisions replayed in " + (elapsed / 1000) + "us");
+            } else {
+                System.out.println(file + ": MISMATCH, " + difference);
+                allMatched = false;
+            }
+        }
+        if (!allMatched) {
+            System.exit(1);
+        }
+    }
+}
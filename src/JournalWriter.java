@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The JournalWriter records a game so that it can be replayed exactly.<p>
+ * It wraps the policy playing the game and appends every decision to a journal as it is made.
+ * Records are batched in a buffer and only written out when the buffer fills up or the journal is closed,
+ * so recording a decision is just a couple of array stores.<p>
+ * The game has to be played with a GameRandom seeded with the same seed that is given to the journal.
+ */
+
+public class JournalWriter implements Policy {
+    // constants
+    private static final int BUFFER_SIZE = 8192;
+
+    // instance variables
+    private Policy policy;
+    private OutputStream stream;
+    private byte[] buffer;
+    private int position;
+
+    /**
+     * Starts a journal by writing its header.
+     *
+     * @param policy The policy making the decisions that get recorded.
+     * @param stream Where the journal is written; it is closed along with the journal.
+     * @param seed The seed the game's GameRandom was created with.
+     */
+    public JournalWriter(Policy policy, OutputStream stream, long seed) {
+        this.policy = policy;
+        this.stream = stream;
+        buffer = new byte[BUFFER_SIZE];
+        writeInt(Journal.MAGIC);
+        writeByte(Journal.VERSION);
+        writeLong(seed);
+    }
+
+    public String chooseName() {
+        return record(policy.chooseName());
+    }
+
+    public String chooseMode() {
+        return record(policy.chooseMode());
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        return record(policy.chooseAction(game));
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return record(policy.chooseShopItem(hunter, isBuying));
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return record(policy.confirm(hunter, item, cost, isBuying));
+    }
+
+    /**
+     * Ends the journal with the final state of the hunter and writes out everything still in the buffer.
+     *
+     * @param game The game that was recorded, once it is over.
+     */
+    public void close(TreasureHunter game) {
+        writeByte(Journal.END);
+        writeText(Journal.describe(game.getHunter()));
+        flush();
+        try {
+            stream.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a decision to the journal.
+     *
+     * @param decision The decision the policy made.
+     * @return the same decision, so it can be handed on to the game.
+     */
+    private String record(String decision) {
+        if (decision == null) {
+            // a pause isn't a decision; the game carries on from the same place
+            return null;
+        }
+        if (decision.isEmpty()) {
+            writeByte(Journal.EMPTY);
+        } else if (decision.length() == 1 && decision.charAt(0) > Journal.EMPTY && decision.charAt(0) < 0x80) {
+            writeByte(decision.charAt(0));
+        } else {
+            int code = Journal.itemCode(decision);
+            if (code >= 0) {
+                writeByte(Journal.ITEM);
+                writeByte(code);
+            } else {
+                writeByte(Journal.TEXT);
+                writeText(decision);
+            }
+        }
+        return decision;
+    }
+
+    private void writeText(String text) {
+        byte[] bytes = Journal.utf8(text);
+        writeShort(bytes.length);
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void writeByte(int value) {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeShort(int value) {
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value);
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * Writes out the buffered records.
+     */
+    private void flush() {
+        try {
+            stream.write(buffer, 0, position);
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+    }
+}
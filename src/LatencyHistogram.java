@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram records how long something took, in nanoseconds, without any locks.<p>
+ * Like an HDR histogram, values are sorted into buckets that are a power of two wide, each split into
+ * 16 sub-buckets, so every value is kept to within about 6% however large it is. Recording a value is a
+ * few shifts and one atomic increment.
+ */
+
+public class LatencyHistogram implements LatencyHistogramMBean {
+    // constants
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF;
+
+    // instance variables
+    private AtomicLongArray counts;
+    private LongAdder count;
+    private LongAdder sum;
+    private AtomicLong max;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new LongAdder();
+        sum = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param nanos How long it took.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP90() {
+        return getPercentile(90);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    /**
+     * Finds the value below which the given percentage of the recorded values fall.
+     *
+     * @param percentile The percentage, from 0 to 100.
+     * @return the lowest value of the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return lowestValueOf(i);
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears the histogram. Values recorded while it is being cleared may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * @return the bucket a value belongs in.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * @return the lowest value that goes in a bucket.
+     */
+    private static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int offset = bucket - SUB_BUCKETS;
+        int shift = offset / HALF + 1;
+        return (long) (offset % HALF + HALF) << shift;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * The JMX view of a LatencyHistogram. All times are in nanoseconds.
+ */
+
+public interface LatencyHistogramMBean {
+    long getCount();
+
+    double getMean();
+
+    long getMax();
+
+    long getP50();
+
+    long getP90();
+
+    long getP99();
+
+    long getP999();
+
+    void reset();
+}
@@ -0,0 +1,510 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Leaderboard keeps the result of every finished game on disk and ranks them by mode.<p>
+ * Results are appended to a file of fixed-width records. Each insert takes the next record number from an
+ * atomic counter and writes its record at that spot with a positional write, so any number of sessions can
+ * insert at once without taking a lock; the only shared step is one atomic increment.<p>
+ * Each mode's ranking is a concurrent skip list of (score, record number) pairs, so inserts and top-N
+ * queries run side by side. Only the 16 byte pairs are kept on the heap; a query reads the records of the
+ * games it returns. flush() and close() write the rankings to a sorted index file next to the records, so
+ * opening the leaderboard again only has to read the index and the records added after it was written. They are
+ * synchronized with each other, since a reporter's flush() and a shutdown hook's close() can overlap.<p>
+ * Winners rank first, fewest turns first; everyone else ranks by treasures found and then by gold.<p>
+ * Usage: Leaderboard [file] [mode] [n] to print the top n games of a mode, or
+ * Leaderboard [file] --load [threads] [games] to time concurrent inserts.
+ */
+
+public class Leaderboard implements AutoCloseable {
+    // constants
+    public static final int WIN = 0;
+    public static final int BROKE = 1;
+    public static final int QUIT = 2;
+    public static final int RECORD_SIZE = 64;
+    public static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x54484C31; // "THL1"
+    private static final int INDEX_MAGIC = 0x54484931; // "THI1"
+    private static final int VERSION = 1;
+    private static final byte WRITTEN = 1; // the second byte of every finished record
+    private static final int MODE_SIZE = 8;
+    private static final int NAME_SIZE = 32;
+    private static final int READ_BATCH = 1024; // records read at a time when opening
+
+    // instance variables
+    private Path file;
+    private Path indexFile;
+    private FileChannel channel;
+    private AtomicLong records;
+    private ConcurrentHashMap<String, ConcurrentSkipListSet<Entry>> rankings;
+
+    /**
+     * Opens a leaderboard, creating the file if it doesn't exist yet.
+     *
+     * @param file The records file; the index is kept in the same place with ".idx" on the end.
+     * @throws IOException if the file can't be opened or isn't a leaderboard.
+     */
+    public Leaderboard(Path file) throws IOException {
+        this.file = file;
+        indexFile = file.resolveSibling(file.getFileName() + ".idx");
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        rankings = new ConcurrentHashMap<>();
+
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            write(header, 0);
+        } else {
+            ByteBuffer header = read(0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException(file + " is not a leaderboard");
+            }
+        }
+
+        // a record cut short by a crash is left out, and written over by the next insert
+        long count = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        records = new AtomicLong(count);
+        long indexed = readIndex(count);
+        scan(indexed, count);
+    }
+
+    /**
+     * Records the result of a finished game.
+     *
+     * @param game The game, once it is over.
+     * @return the record number of the result.
+     */
+    public long add(TreasureHunter game) {
+        Hunter hunter = game.getHunter();
+        int outcome = game.isWin() ? WIN : hunter.isBroke() ? BROKE : QUIT;
+        return add(hunter.getHunterName(), game.getMode(), outcome, game.getTurns(), hunter.getGold(), hunter.getCollectionMask());
+    }
+
+    /**
+     * Records the result of a finished game.
+     *
+     * @param name The hunter's name; only the first 32 bytes are kept.
+     * @param mode The game mode; only the first 8 bytes are kept.
+     * @param outcome WIN, BROKE or QUIT.
+     * @param turns The number of turns played.
+     * @param gold The hunter's gold at the end.
+     * @param collection The hunter's collection as a mask of Item bits.
+     * @return the record number of the result.
+     */
+    public long add(String name, String mode, int outcome, int turns, int gold, int collection) {
+        mode = truncate(mode, MODE_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        encode(buffer, truncate(name, NAME_SIZE), mode, outcome, turns, gold, collection, System.currentTimeMillis());
+        buffer.flip();
+
+        long record = records.getAndIncrement();
+        try {
+            write(buffer, HEADER_SIZE + record * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        getRanking(mode).add(new Entry(score(outcome, turns, gold, collection), record));
+        return record;
+    }
+
+    //Accessors
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of results recorded.
+     */
+    public long getCount() {
+        return records.get();
+    }
+
+    /**
+     * @param mode A game mode.
+     * @return the number of results recorded for the mode.
+     */
+    public int getCount(String mode) {
+        ConcurrentSkipListSet<Entry> ranking = rankings.get(mode);
+        return ranking == null ? 0 : ranking.size();
+    }
+
+    /**
+     * Returns the best results of a mode, reading each one from the records file.
+     *
+     * @param mode The game mode.
+     * @param n The most results to return.
+     * @return the results, best first.
+     */
+    public List<Result> getTop(String mode, int n) {
+        List<Result> top = new ArrayList<>();
+        ConcurrentSkipListSet<Entry> ranking = rankings.get(mode);
+        if (ranking == null) {
+            return top;
+        }
+        Iterator<Entry> entries = ranking.iterator();
+        try {
+            while (top.size() < n && entries.hasNext()) {
+                long record = entries.next().record;
+                top.add(decode(read(HEADER_SIZE + record * RECORD_SIZE, RECORD_SIZE), record));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return top;
+    }
+
+    /**
+     * Forces the records to disk and writes the index, so reopening doesn't have to read every record.<p>
+     * Only one flush writes the index at a time, and once the leaderboard is closed a flush does nothing.
+     */
+    public synchronized void flush() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.force(false);
+            writeIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes the leaderboard and closes the records file.
+     */
+    public synchronized void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Works out a result's place in its mode's ranking; a lower score ranks higher.
+     */
+    private static long score(int outcome, int turns, int gold, int collection) {
+        long goldRank = 0x7FFFFFFFL - gold; // from 0 to 2^32 - 1, most gold first
+        if (outcome == WIN) {
+            return (long) Math.min(turns, 0x3FFFFFFF) << 32 | goldRank;
+        }
+        int missing = Integer.bitCount(Item.TREASURES & ~collection);
+        return 1L << 62 | (long) missing << 60 | goldRank << 28 | Math.min(turns, 0xFFFFFFF);
+    }
+
+    private ConcurrentSkipListSet<Entry> getRanking(String mode) {
+        return rankings.computeIfAbsent(mode, m -> new ConcurrentSkipListSet<>());
+    }
+
+    /**
+     * Reads the rankings from the index file, if there is one that fits the records.
+     *
+     * @param count The number of records in the file.
+     * @return the number of records the index covers.
+     */
+    private long readIndex(long count) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return 0;
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if (index.remaining() < 20 || index.getInt() != INDEX_MAGIC || index.getInt() != VERSION) {
+            return 0;
+        }
+        long covered = index.getLong();
+        if (covered > count) {
+            // the records file is older than the index, so the index can't be trusted
+            return 0;
+        }
+        int modes = index.getInt();
+        for (int m = 0; m < modes; m++) {
+            String mode = readText(index, MODE_SIZE);
+            int entries = index.getInt();
+            ConcurrentSkipListSet<Entry> ranking = getRanking(mode);
+            for (int i = 0; i < entries; i++) {
+                ranking.add(new Entry(index.getLong(), index.getLong()));
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Writes every mode's ranking, in order, to the index file.<p>
+     * Inserts carry on while it is written, so the index only claims to cover the records up to the first
+     * one it is missing; any record after that which did make it in is just added again, harmlessly, on opening.
+     */
+    private void writeIndex() throws IOException {
+        long count = records.get();
+        List<Map.Entry<String, List<Entry>>> snapshot = new ArrayList<>();
+        long[] seen = new long[(int) ((count + 63) / 64)];
+        int size = 20;
+        for (Map.Entry<String, ConcurrentSkipListSet<Entry>> ranking : rankings.entrySet()) {
+            List<Entry> entries = new ArrayList<>(ranking.getValue());
+            for (Entry entry : entries) {
+                if (entry.record < count) {
+                    seen[(int) (entry.record >>> 6)] |= 1L << entry.record;
+                }
+            }
+            snapshot.add(Map.entry(ranking.getKey(), entries));
+            size += MODE_SIZE + 4 + entries.size() * 16;
+        }
+        long covered = 0;
+        while (covered < count && (seen[(int) (covered >>> 6)] & 1L << covered) != 0) {
+            covered++;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(size);
+        index.putInt(INDEX_MAGIC).putInt(VERSION).putLong(covered).putInt(snapshot.size());
+        for (Map.Entry<String, List<Entry>> ranking : snapshot) {
+            putText(index, ranking.getKey(), MODE_SIZE);
+            index.putInt(ranking.getValue().size());
+            for (Entry entry : ranking.getValue()) {
+                index.putLong(entry.score).putLong(entry.record);
+            }
+        }
+
+        // written next to the index and moved over it, so a crash never leaves half an index
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.write(temp, index.array());
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds the records from one number up to another to the rankings.
+     */
+    private void scan(long from, long to) throws IOException {
+        for (long record = from; record < to; record += READ_BATCH) {
+            int batch = (int) Math.min(READ_BATCH, to - record);
+            ByteBuffer buffer = read(HEADER_SIZE + record * RECORD_SIZE, batch * RECORD_SIZE);
+            for (int i = 0; i < batch; i++) {
+                // a record that was never finished is all zeros
+                if (buffer.get(i * RECORD_SIZE + 1) != WRITTEN) {
+                    continue;
+                }
+                Result result = decode(buffer.slice(i * RECORD_SIZE, RECORD_SIZE), record + i);
+                long score = score(result.getOutcome(), result.getTurns(), result.getGold(), result.getCollectionMask());
+                getRanking(result.getMode()).add(new Entry(score, record + i));
+            }
+        }
+    }
+
+    private static void encode(ByteBuffer buffer, String name, String mode, int outcome, int turns, int gold, int collection, long time) {
+        buffer.put((byte) outcome);
+        buffer.put(WRITTEN);
+        buffer.put(new byte[2]);
+        buffer.putInt(turns);
+        buffer.putInt(gold);
+        buffer.putInt(collection);
+        buffer.putLong(time);
+        putText(buffer, mode, MODE_SIZE);
+        putText(buffer, name, NAME_SIZE);
+    }
+
+    private static Result decode(ByteBuffer buffer, long record) {
+        int outcome = buffer.get();
+        buffer.position(buffer.position() + 3); // the written marker and padding
+        int turns = buffer.getInt();
+        int gold = buffer.getInt();
+        int collection = buffer.getInt();
+        long time = buffer.getLong();
+        String mode = readText(buffer, MODE_SIZE);
+        String name = readText(buffer, NAME_SIZE);
+        return new Result(record, name, mode, outcome, turns, gold, collection, time);
+    }
+
+    /**
+     * Writes a string as UTF-8 in a fixed number of bytes, padded with zeros.
+     */
+    private static void putText(ByteBuffer buffer, String text, int size) {
+        byte[] bytes = Journal.utf8(text);
+        buffer.put(bytes);
+        buffer.put(new byte[size - bytes.length]);
+    }
+
+    private static String readText(ByteBuffer buffer, int size) {
+        byte[] bytes = new byte[size];
+        buffer.get(bytes);
+        int length = 0;
+        while (length < size && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Shortens a string until its UTF-8 fits in a number of bytes, without splitting a character.
+     */
+    private static String truncate(String text, int size) {
+        while (Journal.utf8(text).length > size) {
+            text = text.substring(0, text.offsetByCodePoints(text.length(), -1));
+        }
+        return text;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("The leaderboard ends in the middle of a record");
+            }
+        }
+        return buffer.flip();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "leaderboard.dat");
+        try (Leaderboard leaderboard = new Leaderboard(path)) {
+            if (args.length > 1 && args[1].equals("--load")) {
+                int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+                int games = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+                load(leaderboard, threads, games);
+                return;
+            }
+            String mode = args.length > 1 ? args[1] : "n";
+            int n = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+            System.out.println(leaderboard.getCount(mode) + " games in mode " + mode + ":");
+            int place = 1;
+            for (Result result : leaderboard.getTop(mode, n)) {
+                System.out.println(String.format("%3d. %s", place++, result));
+            }
+        }
+    }
+
+    /**
+     * Inserts made-up results from a number of threads at once, and prints how fast they went in.
+     */
+    private static void load(Leaderboard leaderboard, int threads, int games) throws InterruptedException {
+        String[] modes = {"e", "n", "h", "s"};
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            GameRandom random = new GameRandom(t);
+            int share = games / threads + (t < games % threads ? 1 : 0);
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < share; i++) {
+                    int outcome = (int) (random.nextDouble() * 3);
+                    int collection = outcome == WIN ? Item.TREASURES : (int) (random.nextDouble() * 7) << Item.CROWN.ordinal();
+                    leaderboard.add("bot" + i, modes[i & 3], outcome, (int) (random.nextDouble() * 200), (int) (random.nextDouble() * 100), collection);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%,d inserts from %d threads in %.2f s: %,.0f inserts per second",
+                games, threads, seconds, games / seconds));
+    }
+
+    /**
+     * One finished game, as stored in the leaderboard.
+     */
+    public static class Result {
+        private long record;
+        private String name;
+        private String mode;
+        private int outcome;
+        private int turns;
+        private int gold;
+        private int collection;
+        private long time;
+
+        private Result(long record, String name, String mode, int outcome, int turns, int gold, int collection, long time) {
+            this.record = record;
+            this.name = name;
+            this.mode = mode;
+            this.outcome = outcome;
+            this.turns = turns;
+            this.gold = gold;
+            this.collection = collection;
+            this.time = time;
+        }
+
+        //Accessors
+        public long getRecord() {
+            return record;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public int getOutcome() {
+            return outcome;
+        }
+
+        public int getTurns() {
+            return turns;
+        }
+
+        public int getGold() {
+            return gold;
+        }
+
+        public int getCollectionMask() {
+            return collection;
+        }
+
+        /**
+         * @return when the game finished, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public String toString() {
+            String result = switch (outcome) {
+                case WIN -> "won";
+                case BROKE -> "went broke";
+                default -> "quit";
+            };
+            int treasures = Integer.bitCount(collection & Item.TREASURES);
+            return name + " " + result + " after " + turns + " turns with " + gold + " gold and " + treasures + " treasures";
+        }
+    }
+
+    /**
+     * A place in a mode's ranking: the score, then the record number to keep equal scores apart.
+     */
+    private static class Entry implements Comparable<Entry> {
+        private final long score;
+        private final long record;
+
+        private Entry(long score, long record) {
+            this.score = score;
+            this.record = record;
+        }
+
+        public int compareTo(Entry other) {
+            int order = Long.compare(score, other.score);
+            return order != 0 ? order : Long.compare(record, other.record);
+        }
+    }
+}
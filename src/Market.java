@@ -0,0 +1,218 @@
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Market moves the shops' prices with what every hunter in the JVM buys and sells.<p>
+ * Each shop still starts from the cost in its rules and its mode's markdown, and multiplies both by the item's
+ * market factor: above 1 when hunters have been buying the item faster than they sell it back, below 1 when
+ * they have been selling more. Sales are counted in a LongAdder per item and direction, so any number of shops
+ * can record them at once and they only ever touch a cell of their own. A timer thread turns the counts into
+ * new factors every so often and publishes them as one array, swapped in through a volatile field, so a quote
+ * is a volatile read and a multiply with no lock.<p>
+ * The demand and supply for each item are moving averages of the trades per tick, so a rush moves the price
+ * for a while and then wears off. The market is off until start() is called, and while it is off every shop
+ * charges exactly what its rules say, so simulations and replays are unaffected.<p>
+ * Usage: Market [threads] [seconds] to time concurrent trades and quotes while the prices move.
+ */
+
+public class Market implements AutoCloseable {
+    // constants
+    public static final long DEFAULT_PERIOD_MILLIS = 1000;
+    private static final double SENSITIVITY = 0.5; // how far the price moves when all the trades go one way
+    private static final double LIQUIDITY = 20; // trades per tick it takes before the price moves much
+    private static final double DECAY = 0.2; // the weight of the latest tick in the moving averages
+    private static final double MIN_FACTOR = 0.5;
+    private static final double MAX_FACTOR = 2.0;
+    private static final int ITEMS = Item.values().length;
+
+    // static variables
+    private static volatile Market current;
+
+    // instance variables
+    private LongAdder[] bought;
+    private LongAdder[] sold;
+    private long[] lastBought; // only touched by the timer thread
+    private long[] lastSold;
+    private double[] demand;
+    private double[] supply;
+    private volatile double[] factors; // never changed once published
+    private ScheduledExecutorService timer;
+
+    private Market() {
+        bought = new LongAdder[ITEMS];
+        sold = new LongAdder[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            bought[i] = new LongAdder();
+            sold[i] = new LongAdder();
+        }
+        lastBought = new long[ITEMS];
+        lastSold = new long[ITEMS];
+        demand = new double[ITEMS];
+        supply = new double[ITEMS];
+        double[] flat = new double[ITEMS];
+        Arrays.fill(flat, 1.0);
+        factors = flat;
+    }
+
+    /**
+     * @return the market every shop prices from, or null if the market is off.
+     */
+    public static Market current() {
+        return current;
+    }
+
+    /**
+     * Turns the market on, recomputing the prices on a timer.
+     * Calling it again returns the market already running.
+     *
+     * @param periodMillis How often the prices are recomputed.
+     * @return the market.
+     */
+    public static synchronized Market start(long periodMillis) {
+        if (current == null) {
+            Market market = new Market();
+            market.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "market");
+                thread.setDaemon(true);
+                return thread;
+            });
+            market.timer.scheduleAtFixedRate(market::update, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+            current = market;
+        }
+        return current;
+    }
+
+    /**
+     * Turns the market off; every shop goes back to the prices in its rules.
+     */
+    public void close() {
+        synchronized (Market.class) {
+            if (current == this) {
+                current = null;
+            }
+        }
+        timer.shutdownNow();
+    }
+
+    /**
+     * Records an item sold to a hunter.
+     *
+     * @param item The item.
+     */
+    public void recordBuy(Item item) {
+        bought[item.ordinal()].increment();
+    }
+
+    /**
+     * Records an item a hunter sold back to a shop.
+     *
+     * @param item The item.
+     */
+    public void recordSell(Item item) {
+        sold[item.ordinal()].increment();
+    }
+
+    //Accessors
+    /**
+     * @param item The item.
+     * @return what the item's price is multiplied by right now.
+     */
+    public double getFactor(Item item) {
+        return factors[item.ordinal()];
+    }
+
+    /**
+     * @param item The item.
+     * @return the number of the item sold to hunters so far.
+     */
+    public long getBought(Item item) {
+        return bought[item.ordinal()].sum();
+    }
+
+    /**
+     * @param item The item.
+     * @return the number of the item hunters have sold back so far.
+     */
+    public long getSold(Item item) {
+        return sold[item.ordinal()].sum();
+    }
+
+    /**
+     * Works out every item's factor from the trades since the last tick, and publishes them all at once.<p>
+     * Only the timer thread calls this.
+     */
+    public void update() {
+        double[] next = new double[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            long buys = bought[i].sum();
+            long sells = sold[i].sum();
+            demand[i] += DECAY * ((buys - lastBought[i]) - demand[i]);
+            supply[i] += DECAY * ((sells - lastSold[i]) - supply[i]);
+            lastBought[i] = buys;
+            lastSold[i] = sells;
+            double pressure = (demand[i] - supply[i]) / (demand[i] + supply[i] + LIQUIDITY);
+            next[i] = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, 1 + SENSITIVITY * pressure));
+        }
+        factors = next;
+    }
+
+    public String toString() {
+        double[] now = factors;
+        String str = "Market:";
+        for (int i = 0; i < ITEMS; i++) {
+            if (Math.abs(now[i] - 1) >= 0.005) {
+                str += String.format(" %s x%.2f", Item.fromOrdinal(i).getName(), now[i]);
+            }
+        }
+        return str.equals("Market:") ? "Market: every price as in the rules" : str;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Market market = start(100);
+        Rules rules = Rules.forMode("n");
+        Shop shop = new Shop(rules, "n", null, null, new GameRandom(1));
+        LongAdder trades = new LongAdder();
+        LongAdder gold = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        // everybody buys water and sells boats, with a few of everything else mixed in
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            GameRandom random = new GameRandom(t);
+            workers[t] = new Thread(() -> {
+                long done = 0;
+                long quoted = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    Item item = Item.fromOrdinal((int) (random.nextDouble() * 7));
+                    boolean buying = random.nextDouble() < (item == Item.WATER ? 0.9 : item == Item.BOAT ? 0.1 : 0.5);
+                    quoted += shop.checkMarketPrice(item, buying);
+                    if (buying) {
+                        market.recordBuy(item);
+                    } else {
+                        market.recordSell(item);
+                    }
+                    done++;
+                }
+                trades.add(done);
+                gold.add(quoted);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.println(String.format("%,d quotes and trades on %d threads in %d s: %,.0f per second, %.1f gold per quote",
+                trades.sum(), threads, seconds, trades.sum() / (double) seconds, gold.sum() / (double) trades.sum()));
+        System.out.println(market);
+        System.out.println(String.format("Water costs %d gold (the rules say %d) and a boat sells back for %d (the rules say %d)",
+                shop.checkMarketPrice(Item.WATER, true), rules.getCost(Item.WATER),
+                shop.checkMarketPrice(Item.BOAT, false), (int) (rules.getCost(Item.BOAT) * rules.getMarkdown())));
+        market.close();
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * The MenuRenderer draws the main menu of the Treasure Hunter game, one frame per turn.<p>
+ * Each frame is built in the same reused buffer and written out with a single flush. The menu text never
+ * changes so it is built once, and the hunter and town lines are only rebuilt when they change.<p>
+ * In ANSI mode the renderer remembers the last frame and only redraws the lines that changed since then
+ * (usually the news and the hunter's gold or kit). Anything printed outside the frame, like the shop,
+ * makes the next frame redraw the whole screen.<p>
+ * A game played from a script has no one watching the menu, so instead of a frame the renderer only prints the
+ * town's news when something new has happened, and leaves the flushing to the stream.
+ */
+
+public class MenuRenderer {
+    // constants
+    private static final String MENU = "(B)uy something at the shop.\n"
+            + "(S)ell something at the shop.\n"
+            + "(M)ove on to a different town.\n"
+            + "(L)ook for trouble!\n"
+            + "(H)unt for treasure!\n"
+            + "(D)ig for gold!\n"
+            + "Give up the hunt and e(X)it.\n";
+    private static final String PROMPT = "What's your next move? ";
+    private static final String CSI = "\033[";
+
+    // instance variables
+    private PrintStream out;
+    private boolean ansi;
+    private StringBuilder frame;
+    private StringBuilder previousFrame;
+    private StringBuilder output;
+    private StringBuilder messages;
+    private int[] lineStarts;
+    private int[] previousLineStarts;
+    private int lineCount;
+    private int previousLineCount;
+    private boolean redrawAll;
+
+    // cached lines, rebuilt only when what they show changes
+    private String hunterStatus;
+    private Hunter statusHunter;
+    private int statusGold;
+    private int statusKit;
+    private int statusCollection;
+    private String townStatus;
+    private Town statusTown;
+    private Town newsTown;
+    private int newsCount;
+
+    /**
+     * Creates a renderer.
+     *
+     * @param out Where the frames are written; it should not flush on its own.
+     * @param ansi Whether to redraw only the lines that changed, using ANSI cursor movement.
+     */
+    public MenuRenderer(PrintStream out, boolean ansi) {
+        this.out = out;
+        this.ansi = ansi;
+        frame = new StringBuilder(1024);
+        previousFrame = new StringBuilder(1024);
+        output = new StringBuilder(1024);
+        messages = new StringBuilder(256);
+        lineStarts = new int[32];
+        previousLineStarts = new int[32];
+        redrawAll = true;
+    }
+
+    /**
+     * Opens standard output without flushing on every line, so that each turn reaches the terminal in one write.
+     *
+     * @return a PrintStream on standard output that only flushes when asked to.
+     */
+    public static PrintStream openConsole() {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 8192), false);
+    }
+
+    /**
+     * Prints a message for the player.<p>
+     * Normally it is printed straight away; in ANSI mode it is shown just above the prompt of the next frame.
+     *
+     * @param message The message.
+     */
+    public void message(String message) {
+        if (ansi) {
+            messages.append(message).append('\n');
+        } else {
+            out.println(message);
+        }
+    }
+
+    /**
+     * @return true if the renderer only redraws the lines that changed.
+     */
+    public boolean isAnsi() {
+        return ansi;
+    }
+
+    /**
+     * Tells the renderer that something else was printed, so the screen no longer matches the last frame.
+     */
+    public void invalidate() {
+        redrawAll = true;
+    }
+
+    /**
+     * Draws the main menu and flushes it to the player.
+     *
+     * @param hunter The hunter.
+     * @param town The town the hunter is in.
+     */
+    public void render(Hunter hunter, Town town) {
+        frame.setLength(0);
+        if (!ansi) {
+            frame.append('\n');
+        }
+        frame.append(town.getLatestNews()).append('\n');
+        frame.append("***\n");
+        frame.append(hunterStatus(hunter)).append('\n');
+        frame.append(townStatus(town)).append('\n');
+        frame.append(MENU);
+        frame.append('\n');
+        if (ansi) {
+            frame.append(messages);
+            messages.setLength(0);
+        }
+        frame.append(PROMPT);
+
+        if (ansi) {
+            drawChangedLines();
+        } else {
+            out.append(frame);
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the town's news if anything has happened since it was last printed, without drawing the menu.
+     *
+     * @param town The town the hunter is in.
+     */
+    public void renderNews(Town town) {
+        if (town != newsTown || town.getNewsCount() != newsCount) {
+            newsTown = town;
+            newsCount = town.getNewsCount();
+            String news = town.getLatestNews();
+            if (!news.isEmpty()) {
+                out.println(news);
+            }
+        }
+    }
+
+    /**
+     * Prints any messages still waiting for a frame and flushes, once the game is over.
+     */
+    public void finish() {
+        if (messages.length() > 0) {
+            out.append(CSI).append("J");
+            out.append(messages);
+            messages.setLength(0);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the lines of the frame that differ from the last frame, or the whole frame after an invalidate().
+     */
+    private void drawChangedLines() {
+        splitLines();
+        output.setLength(0);
+        if (redrawAll) {
+            output.append(CSI).append("2J").append(CSI).append("H").append(frame);
+            redrawAll = false;
+        } else {
+            for (int i = 0; i < lineCount; i++) {
+                if (i == lineCount - 1 || i >= previousLineCount || !sameLine(i)) {
+                    output.append(CSI).append(i + 1).append(";1H");
+                    output.append(frame, lineStarts[i], lineEnd(frame, lineStarts, lineCount, i));
+                    output.append(CSI).append("K");
+                }
+            }
+        }
+        // the prompt is always drawn last, so this clears anything below it, like the player's last answer
+        output.append(CSI).append("J");
+        out.append(output);
+
+        StringBuilder swap = previousFrame;
+        previousFrame = frame;
+        frame = swap;
+        int[] swapStarts = previousLineStarts;
+        previousLineStarts = lineStarts;
+        lineStarts = swapStarts;
+        previousLineCount = lineCount;
+    }
+
+    /**
+     * @return true if line i of the frame is the same as line i of the last frame.
+     */
+    private boolean sameLine(int i) {
+        int start = lineStarts[i];
+        int end = lineEnd(frame, lineStarts, lineCount, i);
+        int previousStart = previousLineStarts[i];
+        int previousEnd = lineEnd(previousFrame, previousLineStarts, previousLineCount, i);
+        if (end - start != previousEnd - previousStart) {
+            return false;
+        }
+        for (int j = 0; j < end - start; j++) {
+            if (frame.charAt(start + j) != previousFrame.charAt(previousStart + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds where each line of the frame starts, growing the array if needed.
+     */
+    private void splitLines() {
+        lineCount = 0;
+        int start = 0;
+        for (int i = 0; i <= frame.length(); i++) {
+            if (i == frame.length() || frame.charAt(i) == '\n') {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                lineStarts[lineCount++] = start;
+                start = i + 1;
+            }
+        }
+    }
+
+    private int lineEnd(StringBuilder text, int[] starts, int count, int i) {
+        return i + 1 < count ? starts[i + 1] - 1 : text.length();
+    }
+
+    /**
+     * @return the hunter's line, rebuilt only if the gold, kit or collection changed.
+     */
+    private String hunterStatus(Hunter hunter) {
+        if (hunter != statusHunter || hunter.getGold() != statusGold || hunter.getKitMask() != statusKit
+                || hunter.getCollectionMask() != statusCollection) {
+            statusHunter = hunter;
+            statusGold = hunter.getGold();
+            statusKit = hunter.getKitMask();
+            statusCollection = hunter.getCollectionMask();
+            hunterStatus = hunter.toString();
+        }
+        return hunterStatus;
+    }
+
+    /**
+     * @return the town's line, rebuilt only when the hunter is in a different town.
+     */
+    private String townStatus(Town town) {
+        if (town != statusTown) {
+            statusTown = town;
+            townStatus = town.toString();
+        }
+        return townStatus;
+    }
+}
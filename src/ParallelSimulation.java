@@ -0,0 +1,95 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * The ParallelSimulation class shares a batch of headless games out across all the cores.<p>
+ * The batch is split in half again and again on a fork-join pool, and every half gets its own
+ * GameRandom split off from its parent, so the workers never share a generator.
+ * Each worker adds up its own SimulationResults and the halves are merged as they join, without any locks.<p>
+ * A simulation given its own number of threads owns its pool, and shuts it down when it is closed.
+ */
+
+public class ParallelSimulation implements AutoCloseable {
+    // constants
+    private static final long GAMES_PER_TASK = 4096;
+
+    // instance variables
+    private Function<GameRandom, Policy> policyFactory;
+    private ForkJoinPool pool;
+    private boolean ownsPool;
+
+    /**
+     * Creates a parallel simulation on the common fork-join pool.
+     *
+     * @param policyFactory Creates a policy for a worker, given the worker's own generator.
+     */
+    public ParallelSimulation(Function<GameRandom, Policy> policyFactory) {
+        this(policyFactory, ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * Creates a parallel simulation on its own pool of worker threads.
+     *
+     * @param policyFactory Creates a policy for a worker, given the worker's own generator.
+     * @param threads The number of worker threads.
+     */
+    public ParallelSimulation(Function<GameRandom, Policy> policyFactory, int threads) {
+        this(policyFactory, new ForkJoinPool(threads), true);
+    }
+
+    private ParallelSimulation(Function<GameRandom, Policy> policyFactory, ForkJoinPool pool, boolean ownsPool) {
+        this.policyFactory = policyFactory;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    /**
+     * Plays a batch of games across the pool.<p>
+     * With the same seed the results are always the same, since the way the batch is split
+     * (and so which generator plays which games) does not depend on the threads.
+     *
+     * @param games How many games to play.
+     * @param random The generator every worker's generator is split from.
+     * @return The outcomes of all the games.
+     */
+    public SimulationResults run(long games, GameRandom random) {
+        return pool.invoke(new Batch(games, random));
+    }
+
+    /**
+     * Shuts down the simulation's own pool, if it has one; the common pool is left running.
+     */
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A share of the games, which either plays them itself or splits them in two.
+     */
+    private class Batch extends RecursiveTask<SimulationResults> {
+        private static final long serialVersionUID = 1L;
+
+        private long games;
+        private transient GameRandom random;
+
+        private Batch(long games, GameRandom random) {
+            this.games = games;
+            this.random = random;
+        }
+
+        protected SimulationResults compute() {
+            if (games <= GAMES_PER_TASK) {
+                return new Simulation(policyFactory.apply(random), random).run(games);
+            }
+            long half = games / 2;
+            Batch right = new Batch(games - half, random.split());
+            right.fork();
+            SimulationResults results = new Batch(half, random).compute();
+            results.merge(right.join());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * The PausingPolicy plays another policy's moves, but pauses the game once when it reaches a number of turns.<p>
+ * A paused game can be saved with SessionSnapshot and resumed later, which is how the snapshot files
+ * and the session store check that a game picks up exactly where it left off.
+ */
+
+public class PausingPolicy implements Policy {
+    // instance variables
+    private Policy policy;
+    private int pauseAt;
+    private boolean pausedOnce;
+
+    /**
+     * Creates a policy that pauses once.
+     *
+     * @param policy The policy making the moves.
+     * @param pauseAt The number of turns after which the game pauses.
+     */
+    public PausingPolicy(Policy policy, int pauseAt) {
+        this.policy = policy;
+        this.pauseAt = pauseAt;
+    }
+
+    public String chooseName() {
+        return policy.chooseName();
+    }
+
+    public String chooseMode() {
+        return policy.chooseMode();
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        if (!pausedOnce && game.getTurns() == pauseAt) {
+            pausedOnce = true;
+            return null;
+        }
+        return policy.chooseAction(game);
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return policy.chooseShopItem(hunter, isBuying);
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return policy.confirm(hunter, item, cost, isBuying);
+    }
+}
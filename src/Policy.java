@@ -0,0 +1,45 @@
+/**
+ * A Policy makes the decisions for the hunter in the Treasure Hunter game.<p>
+ * The console policy reads every answer from the player, while a simulation can plug in a bot instead.<p>
+ * Answers are expected in lower case, the same way the menus read them.
+ */
+
+public interface Policy {
+    /**
+     * @return the name of the hunter.
+     */
+    String chooseName();
+
+    /**
+     * @return the game mode (e, n, h, s or test).
+     */
+    String chooseMode();
+
+    /**
+     * Picks the next move from the main menu.
+     *
+     * @param game The game being played.
+     * @return the menu choice (b, s, m, l, h, d or x), or null to pause the game so it can be saved and resumed.
+     */
+    String chooseAction(TreasureHunter game);
+
+    /**
+     * Picks the item to buy or sell once the hunter is in the shop.
+     *
+     * @param hunter The Hunter in the shop.
+     * @param isBuying Whether the hunter is buying or selling.
+     * @return the name of the item.
+     */
+    String chooseShopItem(Hunter hunter, boolean isBuying);
+
+    /**
+     * Answers the shopkeeper's y/n question about a quoted price.
+     *
+     * @param hunter The Hunter in the shop.
+     * @param item The item being bought or sold.
+     * @param cost The quoted price.
+     * @param isBuying Whether the hunter is buying or selling.
+     * @return "y" to go through with it.
+     */
+    String confirm(Hunter hunter, String item, int cost, boolean isBuying);
+}
@@ -0,0 +1,542 @@
+/**
+ * The Population class plays a whole population of hunters at once, one turn at a time.<p>
+ * Instead of a Hunter, a Town and a GameRandom for every hunter, each piece of state is kept in its own
+ * primitive array (a struct of arrays): gold, the kit and treasures as Item bits, the town's terrain,
+ * treasure and flags, and each hunter's SplitMix64 seed. Ten million hunters fit in under 200 MB and each
+ * pass over them walks straight through a few arrays.<p>
+ * Every hunter plays the same simple strategy: hunt, dig if they have a shovel, move on if they can,
+ * otherwise buy what they need and look for trouble when they can't afford anything. A turn first picks
+ * every hunter's action, then makes one pass per action. Every random event is one roll from the rules'
+ * outcome tables, worked out straight from the hunter's seed; the seed then moves on by however many rolls
+ * the object model would have used, so each hunter rolls exactly the numbers a GameRandom created with the
+ * same seed would. The rules follow Town.lookForTrouble, Town.leaveTown, Shop.buyItem and the dig in
+ * TreasureHunter.processChoice.<p>
+ * There is one known difference from the real game: moving on always arrives in a fresh town built the way
+ * Town's constructor builds one, while TreasureHunter moves through the World graph and can come back to a
+ * town that has already been searched and dug. A population therefore wins more often than the same strategy
+ * would in the game. validate() checks the arrays against hunters built from the real Hunter, Town and Shop
+ * classes under the same fresh-town rule, so it catches mistakes in the rules but not this difference.<p>
+ * Usage: Population [hunters] [turns] [mode] [seed] [validated hunters]
+ */
+
+public class Population {
+    // actions
+    private static final byte IDLE = 0;
+    private static final byte HUNT = 1;
+    private static final byte DIG = 2;
+    private static final byte MOVE = 3;
+    private static final byte BUY = 4;
+    private static final byte TROUBLE = 5;
+
+    // town flags
+    private static final byte TOUGH = 1;
+    private static final byte SEARCHED = 2;
+    private static final byte DUG = 4;
+    private static final byte BROKE = 8;
+    private static final byte WON = 16;
+    private static final byte DONE = BROKE | WON;
+
+    // static variables
+    private static final int SWORD = Item.SWORD.getBit();
+    private static final int SHOVEL = Item.SHOVEL.getBit();
+    private static final int TREASURE_SHIFT = Item.CROWN.ordinal();
+    private static final int ALL_TREASURES = Item.TREASURES >>> TREASURE_SHIFT;
+    private static final long GAMMA = GameRandom.GOLDEN_GAMMA;
+
+    // instance variables
+    private String mode;
+    private Rules rules;
+    private boolean samurai;
+    private int dust;
+    private AliasTable townTable;
+    private AliasTable[] brawlTables; // by tough * 2 + sword
+    private int[][] brawlChanges; // the gold each brawl outcome wins or loses, by tough * 2 + sword
+    private AliasTable digTable;
+    private AliasTable breakTable;
+    private int[] costs; // by Item ordinal
+    private int[] crossingMasks; // by terrain
+    private int[] primaryItems; // by terrain, as Item ordinals
+    private int size;
+    private long[] seeds;
+    private int[] gold;
+    private byte[] kit; // Item bits
+    private byte[] treasures; // Item bits, shifted down to the crown
+    private byte[] terrain;
+    private byte[] townTreasure;
+    private byte[] flags;
+    private byte[] action;
+    private byte[] item;
+    private int turns;
+
+    /**
+     * Creates a population of hunters, each with the starting gold, an empty kit and their first town.
+     *
+     * @param mode The game mode (e, n, h or s).
+     * @param size The number of hunters.
+     * @param seed The seed every hunter's seed comes from.
+     */
+    public Population(String mode, int size, long seed) {
+        this.mode = mode;
+        this.size = size;
+        samurai = mode.equals("s");
+
+        // the rules are read once, so the whole run plays by the same rules
+        rules = Rules.forMode(mode);
+        dust = rules.getTreasureCount() - 1;
+        townTable = rules.getTownTable();
+        digTable = rules.getDigTable();
+        breakTable = rules.getBreakTable();
+        brawlTables = new AliasTable[4];
+        brawlChanges = new int[4][];
+        for (int b = 0; b < 4; b++) {
+            brawlTables[b] = rules.getBrawlTable(b >= 2, b % 2 == 1);
+            brawlChanges[b] = new int[brawlTables[b].size()];
+            for (int outcome = 1; outcome < brawlChanges[b].length; outcome++) {
+                int kind = Rules.getBrawlKind(outcome);
+                int goldDiff = Rules.getBrawlGold(outcome);
+                brawlChanges[b][outcome] = kind == Rules.KIND_WON ? goldDiff : kind == Rules.KIND_PAID ? -goldDiff : 0;
+            }
+        }
+        costs = new int[Item.SWORD.ordinal() + 1];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = rules.getCost(Item.fromOrdinal(i));
+        }
+        crossingMasks = new int[rules.getTerrainCount()];
+        primaryItems = new int[crossingMasks.length];
+        for (int t = 0; t < crossingMasks.length; t++) {
+            crossingMasks[t] = rules.getTerrain(t).getCrossingMask();
+            primaryItems[t] = Item.fromName(rules.getTerrain(t).getNeededItem()).ordinal();
+        }
+
+        seeds = new long[size];
+        gold = new int[size];
+        kit = new byte[size];
+        treasures = new byte[size];
+        terrain = new byte[size];
+        townTreasure = new byte[size];
+        flags = new byte[size];
+        action = new byte[size];
+        item = new byte[size];
+        for (int i = 0; i < size; i++) {
+            long s = getHunterSeed(seed, i);
+            gold[i] = rules.getStartingGold();
+            newTown(i, s);
+            seeds[i] = s + GAMMA;
+        }
+    }
+
+    /**
+     * @param seed The population's seed.
+     * @param hunter The hunter's number.
+     * @return the seed of the hunter's GameRandom.
+     */
+    public static long getHunterSeed(long seed, int hunter) {
+        return GameRandom.mix64(seed + hunter);
+    }
+
+    //Accessors
+    public int getSize() {
+        return size;
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+
+    public long getSeed(int hunter) {
+        return seeds[hunter];
+    }
+
+    public int getGold(int hunter) {
+        return gold[hunter];
+    }
+
+    public int getKitMask(int hunter) {
+        return kit[hunter] & 0xFF;
+    }
+
+    public int getCollectionMask(int hunter) {
+        return treasures[hunter] << TREASURE_SHIFT;
+    }
+
+    public Terrain getTerrain(int hunter) {
+        return rules.getTerrain(terrain[hunter]);
+    }
+
+    public Item getTownTreasure(int hunter) {
+        return rules.getTreasure(townTreasure[hunter]);
+    }
+
+    public boolean isToughTown(int hunter) {
+        return (flags[hunter] & TOUGH) != 0;
+    }
+
+    public boolean isSearched(int hunter) {
+        return (flags[hunter] & SEARCHED) != 0;
+    }
+
+    public boolean isDug(int hunter) {
+        return (flags[hunter] & DUG) != 0;
+    }
+
+    public boolean isBroke(int hunter) {
+        return (flags[hunter] & BROKE) != 0;
+    }
+
+    public boolean isWin(int hunter) {
+        return (flags[hunter] & WON) != 0;
+    }
+
+    /**
+     * @return the number of hunters who have found all three treasures.
+     */
+    public int getWins() {
+        int wins = 0;
+        for (int i = 0; i < size; i++) {
+            wins += (flags[i] >> 4) & 1;
+        }
+        return wins;
+    }
+
+    /**
+     * @return the number of hunters who have gone broke.
+     */
+    public int getBroke() {
+        int broke = 0;
+        for (int i = 0; i < size; i++) {
+            broke += (flags[i] >> 3) & 1;
+        }
+        return broke;
+    }
+
+    /**
+     * Plays a number of turns.
+     *
+     * @param turns How many turns to play.
+     */
+    public void run(int turns) {
+        for (int t = 0; t < turns; t++) {
+            turn();
+        }
+    }
+
+    /**
+     * Plays one turn for every hunter still in the game.
+     */
+    public void turn() {
+        chooseActions();
+        hunt();
+        dig();
+        leaveTown();
+        buy();
+        lookForTrouble();
+        turns++;
+    }
+
+    /**
+     * Picks every hunter's action for the turn, and the item to buy for those who are buying.
+     */
+    private void chooseActions() {
+        for (int i = 0; i < size; i++) {
+            int f = flags[i];
+            int k = kit[i] & 0xFF;
+            int g = gold[i];
+            int t = terrain[i];
+            int needed = primaryItems[t];
+            boolean canCross = (k & crossingMasks[t]) != 0;
+            boolean hasShovel = (k & SHOVEL) != 0;
+
+            // the samurai picks up a sword first; everyone else buys what they need to cross,
+            // then a shovel once they have gold to spare
+            boolean wantsSword = samurai && (k & SWORD) == 0;
+            boolean buysCrossing = !canCross && (samurai || g >= costs[needed]);
+            boolean buysShovel = !canCross && !hasShovel && (samurai || g >= 2 * costs[Item.SHOVEL.ordinal()]);
+
+            byte a = wantsSword ? BUY
+                    : (f & SEARCHED) == 0 ? HUNT
+                    : hasShovel && (f & DUG) == 0 ? DIG
+                    : canCross ? MOVE
+                    : buysCrossing || buysShovel ? BUY
+                    : TROUBLE;
+            action[i] = (f & DONE) != 0 ? IDLE : a;
+            item[i] = (byte) (wantsSword ? Item.SWORD.ordinal() : buysCrossing ? needed : Item.SHOVEL.ordinal());
+        }
+    }
+
+    /**
+     * Hunts for the town's treasure; no rolls are needed since the treasure was rolled with the town.
+     */
+    private void hunt() {
+        for (int i = 0; i < size; i++) {
+            if (action[i] != HUNT) {
+                continue;
+            }
+            int found = townTreasure[i];
+            int collected = treasures[i] | (found == dust ? 0 : 1 << found);
+            treasures[i] = (byte) collected;
+            flags[i] = (byte) (flags[i] | SEARCHED | (collected == ALL_TREASURES ? WON : 0));
+        }
+    }
+
+    /**
+     * Digs for gold: one roll picks the gold found, which may be none.
+     */
+    private void dig() {
+        for (int i = 0; i < size; i++) {
+            if (action[i] != DIG) {
+                continue;
+            }
+            long s = seeds[i];
+            gold[i] += digTable.sample(roll(s, 1));
+            flags[i] |= DUG;
+            seeds[i] = s + GAMMA;
+        }
+    }
+
+    /**
+     * Crosses the terrain: one roll for whether the item breaks, then one for the new town.
+     */
+    private void leaveTown() {
+        for (int i = 0; i < size; i++) {
+            if (action[i] != MOVE) {
+                continue;
+            }
+            long s = seeds[i];
+            int t = terrain[i];
+            int k = kit[i] & 0xFF;
+            int usable = k & crossingMasks[t];
+            int primary = 1 << primaryItems[t];
+            int used = (usable & primary) != 0 ? primary : usable;
+            boolean breaks = breakTable.sample(roll(s, 1)) == 1 && used != SWORD;
+            kit[i] = (byte) (breaks ? k & ~used : k);
+            newTown(i, s + GAMMA);
+            seeds[i] = s + 2 * GAMMA;
+        }
+    }
+
+    /**
+     * Buys the chosen item; the samurai's slash takes one roll for anything but the sword.
+     */
+    private void buy() {
+        for (int i = 0; i < size; i++) {
+            if (action[i] != BUY) {
+                continue;
+            }
+            int bought = item[i];
+            // the samurai only ever pays for the sword, which is free
+            gold[i] -= samurai ? 0 : costs[bought];
+            kit[i] = (byte) (kit[i] | (1 << bought));
+            seeds[i] += samurai && bought != Item.SWORD.ordinal() ? GAMMA : 0;
+        }
+    }
+
+    /**
+     * Looks for trouble: one roll picks whether there is any, how the brawl goes and the gold at stake.
+     */
+    private void lookForTrouble() {
+        for (int i = 0; i < size; i++) {
+            if (action[i] != TROUBLE) {
+                continue;
+            }
+            long s = seeds[i];
+            int tough = flags[i] & TOUGH;
+            int sword = samurai && (kit[i] & SWORD) != 0 ? 1 : 0;
+            int b = tough * 2 + sword;
+            int g = gold[i] + brawlChanges[b][brawlTables[b].sample(roll(s, 1))];
+            gold[i] = g;
+            flags[i] = (byte) (flags[i] | (g < 0 ? BROKE : 0));
+            seeds[i] = s + GAMMA;
+        }
+    }
+
+    /**
+     * Puts a hunter in a fresh town, rolled the way Town's constructor rolls it.
+     *
+     * @param hunter The hunter.
+     * @param s The hunter's seed before the town's roll.
+     */
+    private void newTown(int hunter, long s) {
+        int outcome = townTable.sample(roll(s, 1));
+        terrain[hunter] = (byte) Rules.getTownTerrain(outcome);
+        townTreasure[hunter] = (byte) Rules.getTownTreasure(outcome);
+        flags[hunter] = (byte) ((flags[hunter] & DONE) | (Rules.isTownTough(outcome) ? TOUGH : 0));
+    }
+
+    /**
+     * @param s A seed.
+     * @param n Which roll after the seed, starting from 1.
+     * @return the random long a GameRandom with the seed would return n-th.
+     */
+    private static long roll(long s, int n) {
+        return GameRandom.mix64(s + n * GAMMA);
+    }
+
+    /**
+     * Plays the first hunters of a population in the object model, turn by turn, and checks that every
+     * one of them ends each turn in the same state. The object model hunters also arrive in a fresh town
+     * on every move, so this does not check the population against the World.
+     *
+     * @param mode The game mode.
+     * @param hunters How many hunters to check.
+     * @param turns How many turns to play.
+     * @param seed The population's seed.
+     * @return null if every hunter matched, or a description of the first difference.
+     */
+    public static String validate(String mode, int hunters, int turns, long seed) {
+        Population population = new Population(mode, hunters, seed);
+        ModelHunter[] models = new ModelHunter[hunters];
+        for (int i = 0; i < hunters; i++) {
+            models[i] = new ModelHunter(mode, new GameRandom(getHunterSeed(seed, i)));
+        }
+
+        for (int turn = 0; turn <= turns; turn++) {
+            for (int i = 0; i < hunters; i++) {
+                String difference = models[i].compare(population, i);
+                if (difference != null) {
+                    return "Hunter " + i + " after " + turn + " turns: " + difference;
+                }
+            }
+            if (turn < turns) {
+                population.turn();
+                for (ModelHunter model : models) {
+                    model.turn();
+                }
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) {
+        int hunters = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String mode = args.length > 2 ? args[2].toLowerCase() : "n";
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : new GameRandom().nextLong();
+        int validated = args.length > 4 ? Integer.parseInt(args[4]) : 10_000;
+
+        if (validated > 0) {
+            String difference = validate(mode, validated, turns, seed);
+            System.out.println(difference == null ? "Validated " + validated + " hunters against the object model (fresh towns on every move)." : difference);
+        }
+
+        long start = System.nanoTime();
+        Population population = new Population(mode, hunters, seed);
+        population.run(turns);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("Hunters: %,d  Turns: %d  Mode: %s", hunters, turns, mode));
+        System.out.println(String.format("Wins: %,d (%.2f%%)", population.getWins(), 100.0 * population.getWins() / hunters));
+        System.out.println(String.format("Broke: %,d (%.2f%%)", population.getBroke(), 100.0 * population.getBroke() / hunters));
+        System.out.println(String.format("%.1f million hunter turns per second", (double) hunters * turns / seconds / 1e6));
+    }
+
+    /**
+     * One hunter played with the real Hunter, Town and Shop classes, following the same strategy.
+     * It builds a new Town on every move and digs with its own copy of the dig rule, rather than playing
+     * through a World and a TreasureHunter.
+     */
+    private static class ModelHunter implements Policy {
+        private String mode;
+        private Rules rules;
+        private GameRandom random;
+        private Hunter hunter;
+        private Town town;
+        private Item wanted;
+
+        private ModelHunter(String mode, GameRandom random) {
+            this.mode = mode;
+            this.random = random;
+            rules = Rules.forMode(mode);
+            hunter = new Hunter("model", rules.getStartingGold());
+            hunter.setHunterMode(mode);
+            arrive();
+        }
+
+        private void arrive() {
+            Shop shop = new Shop(rules, mode, this, null, random);
+            town = new Town(shop, rules, mode, random, random);
+            town.hunterArrives(hunter);
+        }
+
+        private void turn() {
+            if (hunter.isBroke() || hunter.hasAllTreasures()) {
+                return;
+            }
+            boolean samurai = mode.equals("s");
+            Terrain terrain = town.getTerrain();
+            Item needed = Item.fromName(terrain.getNeededItem());
+            boolean canCross = terrain.canCrossTerrain(hunter);
+            boolean hasShovel = hunter.hasItem(Item.SHOVEL);
+
+            if (samurai && !hunter.hasItem(Item.SWORD)) {
+                buy(Item.SWORD);
+            } else if (!town.isSearched()) {
+                hunter.addTreasure(town.getTreasure());
+                town.markSearched();
+            } else if (hasShovel && !town.isDug()) {
+                // a copy of the roll in the dig in TreasureHunter.processChoice
+                hunter.changeGold(rules.getDigTable().sample(random));
+                town.markDug();
+            } else if (canCross) {
+                town.leaveTown();
+                arrive();
+            } else if (samurai || hunter.getGold() >= rules.getCost(needed)) {
+                buy(needed);
+            } else if (!hasShovel && hunter.getGold() >= 2 * rules.getCost(Item.SHOVEL)) {
+                buy(Item.SHOVEL);
+            } else {
+                town.lookForTrouble();
+            }
+        }
+
+        private void buy(Item item) {
+            wanted = item;
+            town.enterShop("b");
+        }
+
+        private String compare(Population population, int i) {
+            if (population.getSeed(i) != random.getSeed()) {
+                return "seed";
+            }
+            if (population.getGold(i) != hunter.getGold()) {
+                return "gold " + population.getGold(i) + " != " + hunter.getGold();
+            }
+            if (population.getKitMask(i) != hunter.getKitMask()) {
+                return "kit";
+            }
+            if (population.getCollectionMask(i) != hunter.getCollectionMask()) {
+                return "collection";
+            }
+            if (population.getTerrain(i) != town.getTerrain() || population.isToughTown(i) != town.isToughTown()
+                    || population.getTownTreasure(i) != town.getTreasure()) {
+                return "town";
+            }
+            if (population.isSearched(i) != town.isSearched() || population.isDug(i) != town.isDug()) {
+                return "searched or dug";
+            }
+            if (population.isBroke(i) != hunter.isBroke() || population.isWin(i) != hunter.hasAllTreasures()) {
+                return "game over";
+            }
+            return null;
+        }
+
+        public String chooseName() {
+            return "model";
+        }
+
+        public String chooseMode() {
+            return mode;
+        }
+
+        public String chooseAction(TreasureHunter game) {
+            return "x";
+        }
+
+        public String chooseShopItem(Hunter hunter, boolean isBuying) {
+            return wanted.getName();
+        }
+
+        public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+            return "y";
+        }
+    }
+}
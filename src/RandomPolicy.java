@@ -0,0 +1,51 @@
+/**
+ * The RandomPolicy is a bot that picks a random move every turn.<p>
+ * It always agrees to the shopkeeper's price and gives up once it has taken too many turns.
+ */
+
+public class RandomPolicy implements Policy {
+    // static variables
+    private static final String[] ACTIONS = {"b", "s", "m", "l", "h", "d"};
+    private static final String[] ITEMS = {"water", "rope", "boots", "machete", "shovel", "horse", "boat", "sword"};
+
+    // instance variables
+    private String mode;
+    private int maxTurns;
+    private GameRandom random;
+
+    /**
+     * Creates a bot for the given mode.
+     *
+     * @param mode The game mode the bot plays.
+     * @param maxTurns The number of turns after which the bot gives up.
+     * @param random Where the bot's random picks come from.
+     */
+    public RandomPolicy(String mode, int maxTurns, GameRandom random) {
+        this.mode = mode;
+        this.maxTurns = maxTurns;
+        this.random = random;
+    }
+
+    public String chooseName() {
+        return "bot";
+    }
+
+    public String chooseMode() {
+        return mode;
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        if (game.getTurns() >= maxTurns) {
+            return "x";
+        }
+        return ACTIONS[(int) (random.nextDouble() * ACTIONS.length)];
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return ITEMS[(int) (random.nextDouble() * ITEMS.length)];
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return "y";
+    }
+}
@@ -0,0 +1,606 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Rules class holds every price and chance in the game for one mode.<p>
+ * A Rules object never changes once it is built. The rules for every mode are built together, from the
+ * built-in numbers overlaid with a properties file, and published through one volatile reference; loading
+ * a new file swaps them all in at once, so readers never lock and never see a mix of old and new rules.
+ * Shops and towns take the rules when they are built, so a running game picks up new rules at the next town,
+ * while a solver or population keeps the rules it started with.<p>
+ * Start the JVM with -Dtreasurehunter.rules=rules.properties to load a file at startup; the file is then
+ * watched and reloaded whenever it changes. A key can be given for every mode ("markdown") or for one mode
+ * ("h.markdown"); a mode's own key always wins. See rules.properties for every key and its built-in value.
+ */
+
+public class Rules {
+    // constants
+    public static final String PROPERTY = "treasurehunter.rules";
+    public static final double TERRAIN_ROLL = 2; // the terrain roll runs from 0 to 2
+    private static final String[] MODES = {"e", "n", "h", "s"};
+    private static final String DEFAULT_MODE = "";
+    private static final Terrain[] TERRAINS = {Terrain.MOUNTAINS, Terrain.OCEAN, Terrain.PLAINS, Terrain.DESERT, Terrain.JUNGLE, Terrain.MARSH};
+    private static final Item[] TREASURES = {Item.CROWN, Item.TROPHY, Item.GEM, Item.DUST};
+
+    // the outcome of a brawl table when there's no brawl; every other outcome is a kind of brawl and its gold
+    public static final int NO_TROUBLE = 0;
+    // the kinds of brawl, as getBrawlKind() takes them out of an outcome
+    public static final int KIND_WON = 0;
+    public static final int KIND_PAID = 1;
+    public static final int KIND_UNPAID = 2;
+    private static final int KINDS = 3;
+
+    // static variables
+    private static final Properties BUILT_IN = new Properties();
+    private static volatile Map<String, Rules> current;
+
+    static {
+        BUILT_IN.setProperty("startingGold", "10");
+        BUILT_IN.setProperty("markdown", "0.5");
+        BUILT_IN.setProperty("h.markdown", "0.25");
+        BUILT_IN.setProperty("e.markdown", "1");
+        BUILT_IN.setProperty("toughness", "0.4");
+        BUILT_IN.setProperty("h.toughness", "0.75");
+        BUILT_IN.setProperty("e.toughness", "0.2");
+        BUILT_IN.setProperty("cost.water", "2");
+        BUILT_IN.setProperty("cost.rope", "4");
+        BUILT_IN.setProperty("cost.boots", "6");
+        BUILT_IN.setProperty("cost.machete", "6");
+        BUILT_IN.setProperty("cost.shovel", "8");
+        BUILT_IN.setProperty("cost.horse", "12");
+        BUILT_IN.setProperty("cost.boat", "20");
+        BUILT_IN.setProperty("cost.sword", "0");
+        BUILT_IN.setProperty("noTroubleChance", "0.33");
+        BUILT_IN.setProperty("toughNoTroubleChance", "0.66");
+        BUILT_IN.setProperty("e.noTroubleChance", "0.15");
+        BUILT_IN.setProperty("e.toughNoTroubleChance", "0.4");
+        BUILT_IN.setProperty("strikeBackChance", "0.06");
+        BUILT_IN.setProperty("toughStrikeBackChance", "0.09");
+        BUILT_IN.setProperty("swordStrike", "0.042");
+        BUILT_IN.setProperty("fumbleChance", "0.042");
+        BUILT_IN.setProperty("maxBrawlGold", "10");
+        BUILT_IN.setProperty("breakChance", "0.5");
+        BUILT_IN.setProperty("e.breakChance", "0");
+        BUILT_IN.setProperty("terrainThresholds", "0.33, 0.66, 0.99, 1.33, 1.66");
+        BUILT_IN.setProperty("digChance", "0.5");
+        BUILT_IN.setProperty("maxDigGold", "20");
+
+        current = compile(new Properties(BUILT_IN));
+        String file = System.getProperty(PROPERTY);
+        if (file != null) {
+            Path path = Paths.get(file);
+            try {
+                load(path);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not load the rules from " + path + ", so the built-in rules are in use: " + e.getMessage());
+            }
+            watch(path);
+        }
+    }
+
+    // instance variables
+    private final String mode;
+    private final int startingGold;
+    private final double markdown;
+    private final double toughness;
+    private final int[] costs; // by Item ordinal
+    private final double noTroubleChance;
+    private final double toughNoTroubleChance;
+    private final double strikeBackChance;
+    private final double toughStrikeBackChance;
+    private final double swordStrike;
+    private final double fumbleChance;
+    private final int maxBrawlGold;
+    private final double breakChance;
+    private final double[] terrainThresholds;
+    private final double digChance;
+    private final int maxDigGold;
+    private final String inventory;
+    private final String samuraiInventory;
+    private final AliasTable townTable;
+    private final Map<Double, AliasTable> otherTownTables; // built the first time a town with another toughness asks
+    private final AliasTable[] brawlTables; // by tough * 2 + sword
+    private final AliasTable digTable;
+    private final AliasTable breakTable;
+
+    /**
+     * Builds the rules for a mode.
+     *
+     * @param mode The mode, or "" for the rules every other mode uses.
+     * @param properties The rules file, backed by the built-in rules.
+     */
+    private Rules(String mode, Properties properties) {
+        this.mode = mode;
+        startingGold = getInt(properties, mode, "startingGold");
+        markdown = getChance(properties, mode, "markdown");
+        toughness = getChance(properties, mode, "toughness");
+        costs = new int[Item.values().length]; // treasures are not for sale
+        for (int i = 0; i <= Item.SWORD.ordinal(); i++) {
+            costs[i] = getInt(properties, mode, "cost." + Item.fromOrdinal(i).getName());
+        }
+        noTroubleChance = getChance(properties, mode, "noTroubleChance");
+        toughNoTroubleChance = getChance(properties, mode, "toughNoTroubleChance");
+        strikeBackChance = getChance(properties, mode, "strikeBackChance");
+        toughStrikeBackChance = getChance(properties, mode, "toughStrikeBackChance");
+        swordStrike = getChance(properties, mode, "swordStrike");
+        fumbleChance = getChance(properties, mode, "fumbleChance");
+        maxBrawlGold = getInt(properties, mode, "maxBrawlGold");
+        breakChance = getChance(properties, mode, "breakChance");
+        digChance = getChance(properties, mode, "digChance");
+        maxDigGold = getInt(properties, mode, "maxDigGold");
+        if (maxBrawlGold == 0 || maxDigGold == 0) {
+            throw new IllegalArgumentException("maxBrawlGold and maxDigGold must be at least 1");
+        }
+
+        String[] thresholds = get(properties, mode, "terrainThresholds").split(",");
+        if (thresholds.length != TERRAINS.length - 1) {
+            throw new IllegalArgumentException("terrainThresholds needs " + (TERRAINS.length - 1) + " numbers");
+        }
+        terrainThresholds = new double[thresholds.length];
+        double last = 0;
+        for (int i = 0; i < thresholds.length; i++) {
+            terrainThresholds[i] = Double.parseDouble(thresholds[i].trim());
+            if (terrainThresholds[i] < last || terrainThresholds[i] > TERRAIN_ROLL) {
+                throw new IllegalArgumentException("terrainThresholds must go up from 0 to " + TERRAIN_ROLL);
+            }
+            last = terrainThresholds[i];
+        }
+
+        String str = "";
+        for (int i = 0; i < Item.SWORD.ordinal(); i++) {
+            str += capitalize(Item.fromOrdinal(i).getName()) + ": " + costs[i] + " gold\n";
+        }
+        inventory = str;
+        samuraiInventory = capitalize(Item.SWORD.getName()) + ": " + costs[Item.SWORD.ordinal()] + " gold\n" + str;
+
+        // every random event is compiled into a table up front, so each one takes a single roll
+        townTable = buildTownTable(toughness);
+        otherTownTables = new ConcurrentHashMap<>();
+        brawlTables = new AliasTable[4];
+        for (int tough = 0; tough < 2; tough++) {
+            for (int sword = 0; sword < 2; sword++) {
+                brawlTables[tough * 2 + sword] = buildBrawlTable(tough == 1, sword == 1);
+            }
+        }
+        double[] dig = new double[maxDigGold + 1];
+        dig[0] = 1 - digChance;
+        for (int gold = 1; gold <= maxDigGold; gold++) {
+            dig[gold] = digChance / maxDigGold;
+        }
+        digTable = new AliasTable(dig);
+        breakTable = new AliasTable(1 - breakChance, breakChance);
+    }
+
+    /**
+     * Returns the rules currently in force for a mode.<p>
+     * Hold on to the result for as long as the same rules should apply.
+     *
+     * @param mode The game mode.
+     * @return the rules for the mode; any mode without rules of its own gets the plain ones.
+     */
+    public static Rules forMode(String mode) {
+        Map<String, Rules> rules = current;
+        Rules modeRules = rules.get(mode);
+        return modeRules != null ? modeRules : rules.get(DEFAULT_MODE);
+    }
+
+    /**
+     * Loads a rules file and swaps it in for every mode at once.<p>
+     * If the file can't be read or a value is wrong, the rules in force are left alone.
+     *
+     * @param file The properties file.
+     * @throws IOException if the file can't be read.
+     * @throws IllegalArgumentException if a value is missing or out of range.
+     */
+    public static void load(Path file) throws IOException {
+        Properties properties = new Properties(BUILT_IN);
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        current = compile(properties);
+    }
+
+    /**
+     * Watches a rules file from a daemon thread and loads it again every time it changes.
+     *
+     * @param file The properties file.
+     */
+    public static void watch(Path file) {
+        Path absolute = file.toAbsolutePath();
+        Thread watcher = new Thread(() -> watchFile(absolute), "rules-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    //Accessors
+    public String getMode() {
+        return mode;
+    }
+
+    public int getStartingGold() {
+        return startingGold;
+    }
+
+    public double getMarkdown() {
+        return markdown;
+    }
+
+    public double getToughness() {
+        return toughness;
+    }
+
+    /**
+     * @param item An item.
+     * @return what the item costs before any markdown, or 0 if the shops don't sell it.
+     */
+    public int getCost(Item item) {
+        return costs[item.ordinal()];
+    }
+
+    /**
+     * @param tough Whether the town is tough.
+     * @return despite the name, the chance of finding trouble when looking for it, which is also the strike a hunter has to beat.
+     */
+    public double getNoTroubleChance(boolean tough) {
+        return tough ? toughNoTroubleChance : noTroubleChance;
+    }
+
+    /**
+     * @param tough Whether the town is tough.
+     * @return the chance that a brawler strikes back before the samurai's sword lands.
+     */
+    public double getStrikeBackChance(boolean tough) {
+        return tough ? toughStrikeBackChance : strikeBackChance;
+    }
+
+    /**
+     * @return the strike a samurai with a sword has to beat to win a brawl.
+     */
+    public double getSwordStrike() {
+        return swordStrike;
+    }
+
+    /**
+     * @return the strike below which a lost brawl costs no gold.
+     */
+    public double getFumbleChance() {
+        return fumbleChance;
+    }
+
+    /**
+     * @return the most gold a brawl can win or lose.
+     */
+    public int getMaxBrawlGold() {
+        return maxBrawlGold;
+    }
+
+    /**
+     * @return the chance that the item used to cross a terrain breaks.
+     */
+    public double getBreakChance() {
+        return breakChance;
+    }
+
+    /**
+     * @return the chance of finding gold when digging.
+     */
+    public double getDigChance() {
+        return digChance;
+    }
+
+    /**
+     * @return the most gold a dig can find.
+     */
+    public int getMaxDigGold() {
+        return maxDigGold;
+    }
+
+    /**
+     * @return the number of different terrains.
+     */
+    public int getTerrainCount() {
+        return TERRAINS.length;
+    }
+
+    /**
+     * @param index A terrain index, in the order of the terrain roll.
+     * @return the terrain.
+     */
+    public Terrain getTerrain(int index) {
+        return TERRAINS[index];
+    }
+
+    /**
+     * @param terrain A terrain.
+     * @return the terrain's index, in the order of the terrain roll.
+     */
+    public int getTerrainIndex(Terrain terrain) {
+        int index = 0;
+        while (TERRAINS[index] != terrain) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @param index A terrain index, in the order of the terrain roll.
+     * @return the chance that a new town is surrounded by the terrain.
+     */
+    public double getTerrainChance(int index) {
+        double from = index == 0 ? 0 : terrainThresholds[index - 1];
+        double to = index == terrainThresholds.length ? TERRAIN_ROLL : terrainThresholds[index];
+        return (to - from) / TERRAIN_ROLL;
+    }
+
+    /**
+     * @param index A treasure index, as in a town outcome.
+     * @return the treasure.
+     */
+    public Item getTreasure(int index) {
+        return TREASURES[index];
+    }
+
+    /**
+     * @return the number of different treasures.
+     */
+    public int getTreasureCount() {
+        return TREASURES.length;
+    }
+
+    /**
+     * Returns the table a new town is picked from. An outcome is a terrain, whether the town is tough and
+     * its treasure all at once; take them apart with getTownTerrain, isTownTough and getTownTreasure.
+     *
+     * @return the table for towns with this mode's toughness.
+     */
+    public AliasTable getTownTable() {
+        return townTable;
+    }
+
+    /**
+     * @param toughness The chance of a town being tough.
+     * @return the table for towns with that toughness.
+     */
+    public AliasTable getTownTable(double toughness) {
+        return toughness == this.toughness ? townTable : otherTownTables.computeIfAbsent(toughness, this::buildTownTable);
+    }
+
+    /**
+     * Returns the table a trip looking for trouble is picked from. An outcome is NO_TROUBLE, or how the
+     * brawl went and the gold at stake all at once; take them apart with getBrawlKind and getBrawlGold.
+     *
+     * @param tough Whether the town is tough.
+     * @param sword Whether a samurai is carrying the sword.
+     * @return the table.
+     */
+    public AliasTable getBrawlTable(boolean tough, boolean sword) {
+        return brawlTables[(tough ? 2 : 0) + (sword ? 1 : 0)];
+    }
+
+    /**
+     * @return the table a dig is picked from; an outcome is the gold found, 0 for dirt.
+     */
+    public AliasTable getDigTable() {
+        return digTable;
+    }
+
+    /**
+     * @return the table for whether a used item breaks; the outcome is 1 if it does.
+     */
+    public AliasTable getBreakTable() {
+        return breakTable;
+    }
+
+    /**
+     * @param outcome An outcome of the town table.
+     * @return the terrain index.
+     */
+    public static int getTownTerrain(int outcome) {
+        return outcome / (2 * TREASURES.length);
+    }
+
+    /**
+     * @param outcome An outcome of the town table.
+     * @return true if the town is tough.
+     */
+    public static boolean isTownTough(int outcome) {
+        return outcome / TREASURES.length % 2 == 1;
+    }
+
+    /**
+     * @param outcome An outcome of the town table.
+     * @return the treasure index.
+     */
+    public static int getTownTreasure(int outcome) {
+        return outcome % TREASURES.length;
+    }
+
+    /**
+     * @param outcome An outcome of a brawl table other than NO_TROUBLE.
+     * @return KIND_WON, KIND_PAID if the hunter lost and paid, or KIND_UNPAID if they lost and got away without paying.
+     */
+    public static int getBrawlKind(int outcome) {
+        return (outcome - 1) % KINDS;
+    }
+
+    /**
+     * @param outcome An outcome of a brawl table other than NO_TROUBLE.
+     * @return the gold at stake.
+     */
+    public static int getBrawlGold(int outcome) {
+        return (outcome - 1) / KINDS + 1;
+    }
+
+    /**
+     * @param samurai Whether the shop sells the sword.
+     * @return the shop's list of items and prices.
+     */
+    public String getInventory(boolean samurai) {
+        return samurai ? samuraiInventory : inventory;
+    }
+
+    /**
+     * Prints every mode's outcome tables and checks each one against a million rolls.
+     */
+    public static void main(String[] args) {
+        int rolls = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        GameRandom random = new GameRandom(rolls);
+        for (String mode : MODES) {
+            Rules rules = forMode(mode);
+            System.out.println("Mode " + mode + ":");
+            check("town", rules.getTownTable(), rolls, random);
+            check("brawl", rules.getBrawlTable(false, false), rolls, random);
+            check("tough brawl", rules.getBrawlTable(true, false), rolls, random);
+            check("sword brawl", rules.getBrawlTable(false, true), rolls, random);
+            check("tough sword brawl", rules.getBrawlTable(true, true), rolls, random);
+            check("dig", rules.getDigTable(), rolls, random);
+            check("break", rules.getBreakTable(), rolls, random);
+        }
+    }
+
+    /**
+     * Prints a table's size and how far the rolled share of each outcome strays from its chance.
+     */
+    private static void check(String name, AliasTable table, int rolls, GameRandom random) {
+        int[] counts = new int[table.size()];
+        for (int i = 0; i < rolls; i++) {
+            counts[table.sample(random)]++;
+        }
+        double worst = 0;
+        for (int outcome = 0; outcome < counts.length; outcome++) {
+            double chance = table.getChance(outcome);
+            double spread = Math.sqrt(chance * (1 - chance) / rolls);
+            double off = Math.abs((double) counts[outcome] / rolls - chance);
+            worst = Math.max(worst, spread > 0 ? off / spread : off > 0 ? Double.POSITIVE_INFINITY : 0);
+        }
+        System.out.println(String.format("  %-18s %3d outcomes, worst outcome %.2f standard deviations off", name, counts.length, worst));
+    }
+
+    /**
+     * Builds the rules for every mode from a rules file.
+     */
+    private static Map<String, Rules> compile(Properties properties) {
+        Map<String, Rules> rules = new HashMap<>();
+        rules.put(DEFAULT_MODE, new Rules(DEFAULT_MODE, properties));
+        for (String mode : MODES) {
+            rules.put(mode, new Rules(mode, properties));
+        }
+        return Map.copyOf(rules);
+    }
+
+    /**
+     * Builds the table of terrain, toughness and treasure for a new town; the three are independent.
+     */
+    private AliasTable buildTownTable(double toughness) {
+        double[] weights = new double[TERRAINS.length * 2 * TREASURES.length];
+        for (int terrain = 0; terrain < TERRAINS.length; terrain++) {
+            for (int tough = 0; tough < 2; tough++) {
+                double chance = getTerrainChance(terrain) * (tough == 1 ? toughness : 1 - toughness) / TREASURES.length;
+                for (int treasure = 0; treasure < TREASURES.length; treasure++) {
+                    weights[(terrain * 2 + tough) * TREASURES.length + treasure] = chance;
+                }
+            }
+        }
+        return new AliasTable(weights);
+    }
+
+    /**
+     * Builds the table for looking for trouble, with the same chances as the old rolls: one for finding
+     * trouble, one for the gold at stake, one for the brawler striking back at a samurai and one for the strike.
+     */
+    private AliasTable buildBrawlTable(boolean tough, boolean sword) {
+        double trouble = getNoTroubleChance(tough); // finding trouble is a roll at or under the chance
+        double toBeat = trouble;
+        double strikeBack = 0;
+        if (sword) {
+            toBeat = swordStrike;
+            strikeBack = getStrikeBackChance(tough);
+        }
+        // the hunter wins with a strike over toBeat and only gets away free with a strike under the fumble chance
+        double won = (1 - strikeBack) * (1 - toBeat);
+        double unpaid = (1 - strikeBack) * Math.min(toBeat, fumbleChance) + strikeBack * fumbleChance;
+        double paid = 1 - won - unpaid;
+
+        double[] weights = new double[1 + KINDS * maxBrawlGold];
+        weights[NO_TROUBLE] = 1 - trouble;
+        for (int gold = 1; gold <= maxBrawlGold; gold++) {
+            int outcome = 1 + (gold - 1) * KINDS;
+            weights[outcome + KIND_WON] = trouble * won / maxBrawlGold;
+            weights[outcome + KIND_PAID] = trouble * Math.max(0, paid) / maxBrawlGold;
+            weights[outcome + KIND_UNPAID] = trouble * unpaid / maxBrawlGold;
+        }
+        return new AliasTable(weights);
+    }
+
+    private static void watchFile(Path file) {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    try {
+                        load(file);
+                        System.err.println("Reloaded the rules from " + file + ".");
+                    } catch (IOException | IllegalArgumentException e) {
+                        System.err.println("Could not reload the rules from " + file + ", so the old rules are still in use: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException | ClosedWatchServiceException e) {
+            System.err.println("Stopped watching the rules in " + file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Looks a key up for a mode, falling back on the key for every mode.
+     */
+    private static String get(Properties properties, String mode, String key) {
+        String value = mode.isEmpty() ? null : properties.getProperty(mode + "." + key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value.trim();
+    }
+
+    private static int getInt(Properties properties, String mode, String key) {
+        int value = Integer.parseInt(get(properties, mode, key));
+        if (value < 0) {
+            throw new IllegalArgumentException(key + " can't be negative");
+        }
+        return value;
+    }
+
+    private static double getChance(Properties properties, String mode, String key) {
+        double value = Double.parseDouble(get(properties, mode, key));
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException(key + " must be from 0 to 1");
+        }
+        return value;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
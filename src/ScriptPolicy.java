@@ -0,0 +1,219 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * The ScriptPolicy reads every decision from a script, for acceptance runs and bots that send the game a long
+ * stream of commands from a file or a pipe.<p>
+ * The script is the same answers a player would type, one per line, and several can share a line separated by
+ * semicolons, so a trip to the shop can be written as "b; water; y". Lines starting with # are comments.<p>
+ * The input is read a large block at a time and cut into answers byte by byte, lower casing as it goes, so
+ * there is no Scanner, no regex and no flush between moves; the one-letter answers that make up most of a
+ * script are never allocated at all. Played with TreasureHunter.setScripted(), the game doesn't draw the menu
+ * either, so a script runs as fast as it can be read rather than as fast as a console can print.<p>
+ * When the script runs out the answer is "x", which ends the game, just as it is for a player who hangs up.<p>
+ * Usage: ScriptPolicy [games] [turns] to play the same script through a ConsolePolicy and through a
+ * ScriptPolicy, and compare the time taken.
+ */
+
+public class ScriptPolicy implements Policy {
+    // constants
+    public static final int BUFFER_SIZE = 1 << 16;
+    private static final String[] ONE_LETTER = new String[128];
+
+    // instance variables
+    private InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] token;
+    private boolean lineStart;
+    private long answers;
+
+    static {
+        for (int c = 0; c < ONE_LETTER.length; c++) {
+            ONE_LETTER[c] = String.valueOf((char) c).toLowerCase();
+        }
+    }
+
+    /**
+     * Creates a policy that reads a script from a stream.
+     *
+     * @param in The script; it doesn't need to be buffered.
+     */
+    public ScriptPolicy(InputStream in) {
+        this.in = in;
+        buffer = new byte[BUFFER_SIZE];
+        token = new byte[64];
+        lineStart = true;
+    }
+
+    public String chooseName() {
+        return next();
+    }
+
+    public String chooseMode() {
+        return next();
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        return next();
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return next();
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return next();
+    }
+
+    //Accessors
+    /**
+     * @return the number of answers read from the script so far.
+     */
+    public long getAnswers() {
+        return answers;
+    }
+
+    /**
+     * Reads the next answer: everything up to the end of the line or a semicolon, trimmed and lower cased.<p>
+     * A blank line is still an answer, as it would be at the console.
+     *
+     * @return the answer, or "x" if the script has run out.
+     */
+    private String next() {
+        int length = 0;
+        boolean started = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (!started) {
+                    return "x";
+                }
+                break;
+            }
+            byte b = buffer[position++];
+            if (b == '#' && lineStart) {
+                skipLine();
+                continue;
+            }
+            lineStart = b == '\n';
+            started = true;
+            if (b == '\n' || b == ';') {
+                break;
+            }
+            if (b == '\r' || (length == 0 && (b == ' ' || b == '\t'))) {
+                continue;
+            }
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (length == token.length) {
+                token = Arrays.copyOf(token, length * 2);
+            }
+            token[length++] = b;
+        }
+        while (length > 0 && (token[length - 1] == ' ' || token[length - 1] == '\t')) {
+            length--;
+        }
+        answers++;
+        if (length == 1 && token[0] >= 0) {
+            return ONE_LETTER[token[0]];
+        }
+        // anything that isn't ASCII is lower cased the slow way
+        return new String(token, 0, length, StandardCharsets.UTF_8).toLowerCase();
+    }
+
+    /**
+     * Skips the rest of a comment line.
+     */
+    private void skipLine() {
+        while (position < limit || fill()) {
+            if (buffer[position++] == '\n') {
+                lineStart = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the next block of the script.
+     *
+     * @return false if the script has run out.
+     */
+    private boolean fill() {
+        try {
+            int read = in.read(buffer);
+            while (read == 0) {
+                read = in.read(buffer);
+            }
+            if (read < 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read the script", e);
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        // every game buys water, then wanders, searches and digs; one answer a line, so the console reads the same
+        String[] moves = {"b", "water", "y", "l", "h", "d", "m", "s", "water", "n", "l", "h", "d"};
+        StringBuilder script = new StringBuilder();
+        for (int g = 0; g < games; g++) {
+            script.append("hunter ").append(g).append("\nn\n");
+            for (int t = 0; t < turns; t++) {
+                script.append(moves[t % moves.length]).append('\n');
+            }
+            script.append("\nx\n");
+        }
+        byte[] bytes = script.toString().getBytes(StandardCharsets.UTF_8);
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream(), false);
+
+        // warm up, then time a console that reads lines and draws the menu against the script
+        play(bytes, false, nowhere, games / 10);
+        long start = System.nanoTime();
+        long consoleTurns = play(bytes, false, nowhere, games);
+        long console = System.nanoTime() - start;
+        play(bytes, true, nowhere, games / 10);
+        start = System.nanoTime();
+        long scriptedTurns = play(bytes, true, nowhere, games);
+        long scripted = System.nanoTime() - start;
+
+        System.out.println(String.format("%,d KB of script, %,d games: %.2f s at the console, %.2f s scripted (%.1fx)",
+                bytes.length >> 10, games, console / 1e9, scripted / 1e9, (double) console / scripted));
+        System.out.println(String.format("%,d turns played each way%s, %,.0f scripted turns per second",
+                scriptedTurns, consoleTurns == scriptedTurns ? ", the same" : " but " + consoleTurns + " at the console",
+                scriptedTurns / (scripted / 1e9)));
+    }
+
+    /**
+     * Plays games from a script until it runs out or enough games have been played.
+     *
+     * @return the number of turns played.
+     */
+    private static long play(byte[] script, boolean scripted, PrintStream out, int games) {
+        InputStream in = new ByteArrayInputStream(script);
+        Policy policy = scripted ? new ScriptPolicy(in) : new ConsolePolicy(new Scanner(in), out);
+        GameRandom random = new GameRandom(1);
+        long turns = 0;
+        for (int g = 0; g < games; g++) {
+            TreasureHunter game = new TreasureHunter(policy, out, random);
+            game.setScripted(scripted);
+            game.play();
+            turns += game.getTurns();
+        }
+        return turns;
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The SessionSnapshot class saves a game in progress as a few dozen bytes, and restores it.<p>
+ * Everything else in a session can be built again from what is saved: the towns come from the world's seed,
+ * the shops from the rules and the random numbers from the seed the game's GameRandom had reached. So a
+ * snapshot holds the random seed, the world's seed, the town the hunter is in, the hunter's name, mode,
+ * gold, kit and collection as masks, the turns played, the game's number on a SharedWorld and how far the
+ * hunter had read the news of the town they are in, and the towns the world is keeping with whether each has
+ * been searched or dug. A restored game rolls exactly the same numbers
+ * the saved one would have.<p>
+ * Layout, big-endian: version (1 byte), won (1), random seed (8), world seed (8), shared world number (4),
+ * gold (4), kit (2), collection (2), turns (4), current town (3), stories read there (8), number of towns kept (1), then each kept town as 3 bytes
+ * (its number, plus a bit for searched and a bit for dug), oldest visit first, then the name (2 byte length
+ * and UTF-8) and the mode (1 byte length and UTF-8).
+ */
+
+public class SessionSnapshot {
+    // constants
+    public static final int VERSION = 2;
+    public static final int FIXED_SIZE = 49; // everything but the towns and the name and mode themselves
+    private static final int SEARCHED = 1 << 20;
+    private static final int DUG = 1 << 21;
+    private static final int TOWN_BITS = SEARCHED - 1;
+
+    /**
+     * @param game A game that has started.
+     * @return the size of the game's snapshot in bytes.
+     */
+    public static int size(TreasureHunter game) {
+        return FIXED_SIZE + 3 * game.getWorld().getCachedTowns()
+                + utf8Length(game.getHunter().getHunterName()) + utf8Length(game.getMode());
+    }
+
+    /**
+     * Saves a game.
+     *
+     * @param game A game that has started, usually one that is paused.
+     * @return the snapshot.
+     */
+    public static byte[] save(TreasureHunter game) {
+        ByteBuffer buffer = ByteBuffer.allocate(size(game));
+        save(game, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Saves a game into a buffer, starting at its position.
+     *
+     * @param game A game that has started, usually one that is paused.
+     * @param buffer Where to write the snapshot; it needs size(game) bytes left.
+     * @return the number of bytes written.
+     */
+    public static int save(TreasureHunter game, ByteBuffer buffer) {
+        World world = game.getWorld();
+        Hunter hunter = game.getHunter();
+        if (world == null) {
+            throw new IllegalStateException("The game hasn't started yet");
+        }
+        byte[] name = Journal.utf8(hunter.getHunterName());
+        byte[] mode = Journal.utf8(game.getMode());
+        if (name.length > 0xFFFF || mode.length > 0xFF) {
+            throw new IllegalArgumentException("The hunter's name or mode is too long to save");
+        }
+        int start = buffer.position();
+        buffer.put((byte) VERSION);
+        buffer.put((byte) (game.isWin() ? 1 : 0));
+        buffer.putLong(game.getRandom().getSeed());
+        buffer.putLong(world.getSeed());
+        buffer.putInt(world.getAuthor());
+        buffer.putInt(hunter.getGold());
+        buffer.putShort((short) hunter.getKitMask());
+        buffer.putShort((short) hunter.getCollectionMask());
+        buffer.putInt(game.getTurns());
+        putTown(buffer, world.getCurrentId());
+        buffer.putLong(world.getCurrentTown().getStoriesRead());
+
+        // visiting the towns oldest first leaves them in the same visit order
+        int[] ids = world.getCachedIds();
+        buffer.put((byte) ids.length);
+        for (int id : ids) {
+            Town town = world.getTown(id);
+            putTown(buffer, id | (town.isSearched() ? SEARCHED : 0) | (town.isDug() ? DUG : 0));
+        }
+
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.put((byte) mode.length);
+        buffer.put(mode);
+        return buffer.position() - start;
+    }
+
+    /**
+     * Restores a game from a snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @param policy Where the game's decisions come from from now on.
+     * @param out Where the game is printed, or null to play without printing anything.
+     * @return the game, ready to resume().
+     */
+    public static TreasureHunter restore(byte[] snapshot, Policy policy, PrintStream out) {
+        return restore(ByteBuffer.wrap(snapshot), policy, out);
+    }
+
+    /**
+     * Restores a game from a snapshot in a buffer, starting at its position.
+     *
+     * @param buffer The snapshot; the position is left just after it.
+     * @param policy Where the game's decisions come from from now on.
+     * @param out Where the game is printed, or null to play without printing anything.
+     * @return the game, ready to resume().
+     * @throws IllegalArgumentException if the snapshot is from another version or is cut short.
+     */
+    public static TreasureHunter restore(ByteBuffer buffer, Policy policy, PrintStream out) {
+        try {
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Can't restore a version " + version + " snapshot");
+            }
+            boolean win = buffer.get() != 0;
+            long randomSeed = buffer.getLong();
+            long worldSeed = buffer.getLong();
+            int author = buffer.getInt();
+            int gold = buffer.getInt();
+            int kit = buffer.getShort() & 0xFFFF;
+            int collection = buffer.getShort() & 0xFFFF;
+            int turns = buffer.getInt();
+            int currentId = getTown(buffer);
+            long storiesRead = buffer.getLong();
+            int[] towns = new int[buffer.get() & 0xFF];
+            for (int i = 0; i < towns.length; i++) {
+                towns[i] = getTown(buffer);
+            }
+            String name = getText(buffer, buffer.getShort() & 0xFFFF);
+            String mode = getText(buffer, buffer.get() & 0xFF);
+
+            GameRandom random = new GameRandom(randomSeed);
+            TreasureHunter game = new TreasureHunter(policy, out, random);
+            Hunter hunter = new Hunter(name, 0);
+            hunter.setHunterMode(mode);
+            hunter.restore(gold, kit, collection);
+
+            World world = new World(worldSeed, mode, policy, out, random);
+            world.setAuthor(author);
+            for (int town : towns) {
+                Town restored = world.getTown(town & TOWN_BITS);
+                if ((town & SEARCHED) != 0) {
+                    restored.markSearched();
+                }
+                if ((town & DUG) != 0) {
+                    restored.markDug();
+                }
+                if ((town & TOWN_BITS) == currentId) {
+                    restored.setStoriesRead(storiesRead);
+                }
+            }
+            world.setCurrentId(currentId);
+            game.restore(hunter, mode, world, turns, win);
+            return game;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("The snapshot is cut short");
+        }
+    }
+
+    private static void putTown(ByteBuffer buffer, int town) {
+        buffer.put((byte) (town >>> 16));
+        buffer.putShort((short) town);
+    }
+
+    private static int getTown(ByteBuffer buffer) {
+        int high = buffer.get() & 0xFF;
+        return high << 16 | (buffer.getShort() & 0xFFFF);
+    }
+
+    private static String getText(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String text) {
+        return Journal.utf8(text).length;
+    }
+}
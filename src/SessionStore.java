@@ -0,0 +1,241 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The SessionStore parks paused games off the heap, so idle players cost almost nothing to keep around.<p>
+ * Each parked game is a SessionSnapshot in a fixed-width slot of a direct ByteBuffer. Slots come in slabs
+ * of 65,536 that are only allocated once they are needed, so the store grows with the number of parked
+ * games; a million parked games take 128 MB outside the heap and nothing on it, and the garbage collector
+ * never has to look at them. Parking a game turns it into a snapshot and drops the objects; unparking builds
+ * them again from the snapshot in a few microseconds.<p>
+ * Each slot starts with the snapshot's 2 byte length, which is 0 while the slot is free. Free slots are kept
+ * in a lock-free stack threaded through the free slots themselves: the four bytes after the length point to
+ * the next one, and the top of the stack is one AtomicLong that also counts every
+ * change, so a slot that is popped and pushed back in between can't fool another thread. Any number of
+ * sessions can park and unpark at once.<p>
+ * Usage: SessionStore [games] [turns before parking] to park that many copies of a paused game and
+ * report the heap and off-heap memory they use.
+ */
+
+public class SessionStore {
+    // constants
+    public static final int DEFAULT_SLOT_SIZE = 128;
+    public static final int SLAB_SLOTS = 1 << 16;
+    private static final int LENGTH_SIZE = 2;
+    private static final int LINK_SIZE = 4;
+
+    // instance variables
+    private int slotSize;
+    private int capacity;
+    private AtomicReferenceArray<ByteBuffer> slabs;
+    private AtomicInteger allocated; // slots handed out from the slabs at least once
+    private AtomicLong freeTop; // changes so far in the high half, top free slot + 1 in the low half
+    private AtomicInteger parked;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param capacity The most games it can hold.
+     * @param slotSize The size of a slot, including the 2 byte length; snapshots bigger than this stay on the heap.
+     */
+    public SessionStore(int capacity, int slotSize) {
+        if (slotSize < LENGTH_SIZE + LINK_SIZE || (long) SLAB_SLOTS * slotSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A slot has to be from " + (LENGTH_SIZE + LINK_SIZE) + " bytes to "
+                    + Integer.MAX_VALUE / SLAB_SLOTS + " bytes");
+        }
+        this.capacity = capacity;
+        this.slotSize = slotSize;
+        slabs = new AtomicReferenceArray<>((capacity + SLAB_SLOTS - 1) / SLAB_SLOTS);
+        allocated = new AtomicInteger();
+        freeTop = new AtomicLong();
+        parked = new AtomicInteger();
+    }
+
+    //Accessors
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * @return the number of games parked.
+     */
+    public int getParked() {
+        return parked.get();
+    }
+
+    /**
+     * @return the bytes allocated outside the heap so far.
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (int i = 0; i < slabs.length(); i++) {
+            if (slabs.get(i) != null) {
+                bytes += (long) SLAB_SLOTS * slotSize;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Parks a paused game.
+     *
+     * @param game The game; it shouldn't be used again once it is parked.
+     * @return the slot the game is parked in, or -1 if the store is full or the game is too big for a slot.
+     */
+    public int park(TreasureHunter game) {
+        int size = SessionSnapshot.size(game);
+        if (size > slotSize - LENGTH_SIZE) {
+            return -1;
+        }
+        int slot = allocate();
+        if (slot < 0) {
+            return -1;
+        }
+        ByteBuffer buffer = slot(slot);
+        buffer.putShort(0, (short) size);
+        buffer.position(LENGTH_SIZE);
+        SessionSnapshot.save(game, buffer);
+        parked.incrementAndGet();
+        return slot;
+    }
+
+    /**
+     * Brings a parked game back onto the heap and frees its slot.
+     *
+     * @param slot The slot park() returned.
+     * @param policy Where the game's decisions come from from now on.
+     * @param out Where the game is printed, or null to play without printing anything.
+     * @return the game, ready to resume().
+     * @throws IllegalArgumentException if the slot is empty.
+     */
+    public TreasureHunter unpark(int slot, Policy policy, PrintStream out) {
+        ByteBuffer buffer = slot(slot);
+        if (buffer.getShort(0) == 0) {
+            throw new IllegalArgumentException("Slot " + slot + " is empty");
+        }
+        buffer.position(LENGTH_SIZE);
+        TreasureHunter game = SessionSnapshot.restore(buffer, policy, out);
+        buffer.putShort(0, (short) 0);
+        free(slot);
+        parked.decrementAndGet();
+        return game;
+    }
+
+    /**
+     * Takes a slot off the free stack, or a new one if the stack is empty.
+     *
+     * @return the slot, or -1 if every slot is in use.
+     */
+    private int allocate() {
+        while (true) {
+            long top = freeTop.get();
+            int link = (int) top;
+            if (link == 0) {
+                break;
+            }
+            int slot = link - 1;
+            // if another thread takes this slot first, the count moves on and the exchange fails
+            int next = slots(slot).getInt(offset(slot) + LENGTH_SIZE);
+            if (freeTop.compareAndSet(top, ((top >>> 32) + 1) << 32 | (next & 0xFFFFFFFFL))) {
+                return slot;
+            }
+        }
+
+        int slot = allocated.getAndIncrement();
+        if (slot >= capacity) {
+            allocated.decrementAndGet();
+            return -1;
+        }
+        int slab = slot / SLAB_SLOTS;
+        if (slabs.get(slab) == null) {
+            // only the first thread in allocates the slab; the rest wait for it rather than allocate one to throw away
+            synchronized (slabs) {
+                if (slabs.get(slab) == null) {
+                    slabs.set(slab, ByteBuffer.allocateDirect(SLAB_SLOTS * slotSize));
+                }
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Pushes a slot onto the free stack.
+     */
+    private void free(int slot) {
+        ByteBuffer slab = slots(slot);
+        while (true) {
+            long top = freeTop.get();
+            slab.putInt(offset(slot) + LENGTH_SIZE, (int) top);
+            if (freeTop.compareAndSet(top, ((top >>> 32) + 1) << 32 | (slot + 1))) {
+                return;
+            }
+        }
+    }
+
+    private ByteBuffer slots(int slot) {
+        return slabs.get(slot / SLAB_SLOTS);
+    }
+
+    private int offset(int slot) {
+        return (slot % SLAB_SLOTS) * slotSize;
+    }
+
+    private ByteBuffer slot(int slot) {
+        return slots(slot).slice(offset(slot), slotSize);
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int pauseAt = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        TreasureHunter game = new TreasureHunter(new PausingPolicy(new RandomPolicy("n", 200, new GameRandom(1)), pauseAt), null, new GameRandom(2));
+        game.play();
+        if (!game.isPaused()) {
+            System.out.println("The game finished before it could be paused; try fewer turns.");
+            return;
+        }
+        byte[] snapshot = SessionSnapshot.save(game);
+        long heapBefore = usedHeap();
+
+        SessionStore store = new SessionStore(games, DEFAULT_SLOT_SIZE);
+        int[] slots = new int[games];
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            slots[i] = store.park(SessionSnapshot.restore(snapshot, null, null));
+        }
+        long parkTime = System.nanoTime() - start;
+        long heapParked = usedHeap();
+
+        start = System.nanoTime();
+        int mismatches = 0;
+        for (int i = 0; i < games; i++) {
+            TreasureHunter unparked = store.unpark(slots[i], null, null);
+            if (i % 1000 == 0 && !Arrays.equals(SessionSnapshot.save(unparked), snapshot)) {
+                mismatches++;
+            }
+        }
+        long unparkTime = System.nanoTime() - start;
+
+        System.out.println(String.format("Parked %,d games (%d byte snapshots) in %,d MB off the heap",
+                games, snapshot.length, store.getOffHeapBytes() >> 20));
+        System.out.println(String.format("Heap used while parked: %,d KB more than before, slots array included",
+                Math.max(0, heapParked - heapBefore) >> 10));
+        System.out.println(String.format("Park (restore included): %.2f us per game, unpark: %.2f us per game",
+                parkTime / 1e3 / games, unparkTime / 1e3 / games));
+        System.out.println(mismatches == 0 ? "Every game checked came back the same." : mismatches + " games came back different.");
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The SharedTown is the part of a town that every hunter in a SharedWorld has to share.<p>
+ * Each hunter still has a Town of their own, with their own news and their own shop, but the treasure hidden in
+ * the town, the gold under it and the brawlers in its saloon are here, and there's only one of each. They all
+ * live in one AtomicLong and are claimed with compare-and-set: the first hunter to search the town gets the
+ * treasure, the first to dig gets the gold, and a brawler can only fight one hunter at a time. Nobody takes a
+ * lock, so hundreds of hunters can act in the same town at once.<p>
+ * What each hunter does is posted to the town's news, a ring of the last few stories with a sequence number
+ * that only ever goes up. Each hunter keeps their own place in it and reads the stories posted by everyone else
+ * since, so posting never waits for the readers and a hunter who is slow to read just misses the oldest stories.
+ * A story only remembers the number its author was given on joining the SharedWorld, not the hunter, so the news
+ * never keeps a hunter who has left, or whose game is parked, on the heap.
+ */
+
+public class SharedTown {
+    // constants
+    public static final int NEWS_SIZE = 16;
+    private static final long TREASURE_TAKEN = 1;
+    private static final long DUG = 2;
+    private static final int BRAWLER_SHIFT = 8;
+    private static final long ONE_BRAWLER = 1L << BRAWLER_SHIFT;
+
+    // instance variables
+    private AtomicLong state; // the flags in the low byte, the brawlers above them
+    private AtomicLong posted;
+    private AtomicReferenceArray<Story> news;
+
+    /**
+     * Creates a town nobody has searched or dug in.
+     *
+     * @param brawlers The number of brawlers in the town.
+     */
+    public SharedTown(int brawlers) {
+        state = new AtomicLong(brawlers * ONE_BRAWLER);
+        posted = new AtomicLong();
+        news = new AtomicReferenceArray<>(NEWS_SIZE);
+    }
+
+    //Accessors
+    /**
+     * @return true if a hunter has taken the town's treasure.
+     */
+    public boolean isTreasureTaken() {
+        return (state.get() & TREASURE_TAKEN) != 0;
+    }
+
+    /**
+     * @return true if a hunter has dug up the town's gold.
+     */
+    public boolean isDug() {
+        return (state.get() & DUG) != 0;
+    }
+
+    /**
+     * @return the number of brawlers in the town who aren't fighting anyone right now.
+     */
+    public int getBrawlers() {
+        return (int) (state.get() >>> BRAWLER_SHIFT);
+    }
+
+    /**
+     * @return the number of stories posted in the town so far.
+     */
+    public long getPosted() {
+        return posted.get();
+    }
+
+    /**
+     * Takes the town's treasure, unless another hunter already has.
+     *
+     * @return true if the treasure was still there.
+     */
+    public boolean claimTreasure() {
+        return (state.getAndUpdate(s -> s | TREASURE_TAKEN) & TREASURE_TAKEN) == 0;
+    }
+
+    /**
+     * Digs up the town's gold, unless another hunter already has.
+     *
+     * @return true if the gold was still there.
+     */
+    public boolean claimDig() {
+        return (state.getAndUpdate(s -> s | DUG) & DUG) == 0;
+    }
+
+    /**
+     * Picks a fight with one of the town's brawlers, if any of them are free.
+     *
+     * @return true if a brawler took the hunter on; they have to be let go with releaseBrawler() or beaten.
+     */
+    public boolean claimBrawler() {
+        long current = state.get();
+        while (current >= ONE_BRAWLER) {
+            if (state.compareAndSet(current, current - ONE_BRAWLER)) {
+                return true;
+            }
+            current = state.get();
+        }
+        return false;
+    }
+
+    /**
+     * Sends a brawler back to the saloon after a fight they didn't lose.
+     */
+    public void releaseBrawler() {
+        state.addAndGet(ONE_BRAWLER);
+    }
+
+    /**
+     * Posts a story to the town's news.
+     *
+     * @param author The number of the hunter the story is about, who doesn't need to be told it.
+     * @param text The story.
+     */
+    public void post(int author, String text) {
+        long sequence = posted.getAndIncrement();
+        news.set((int) sequence & (NEWS_SIZE - 1), new Story(sequence, author, text));
+    }
+
+    /**
+     * Reads the stories other hunters have posted since a place in the news.<p>
+     * Stories that have already been written over are skipped. A story that has been numbered but not written
+     * yet stops the reading there, and is read next time along with whatever follows it.
+     *
+     * @param reader The number of the hunter reading, whose own stories are left out.
+     * @param since The number of stories posted when the hunter last read the news.
+     * @param stories Where the stories are added, one per line.
+     * @return the number of the first story not read, to read from next time.
+     */
+    public long readNews(int reader, long since, StringBuilder stories) {
+        long end = posted.get();
+        // a place past the end comes from a game saved on another run, when the town's news started again
+        long sequence = Math.max(Math.min(since, end), end - NEWS_SIZE);
+        for (; sequence < end; sequence++) {
+            Story story = news.get((int) sequence & (NEWS_SIZE - 1));
+            if (story == null || story.sequence < sequence) {
+                // post() has taken the number but hasn't put the story in its place yet
+                break;
+            }
+            if (story.sequence == sequence && story.author != reader) {
+                if (!stories.isEmpty()) {
+                    stories.append('\n');
+                }
+                stories.append(story.text);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * One story in the town's news.
+     */
+    private static class Story {
+        private long sequence;
+        private int author;
+        private String text;
+
+        private Story(long sequence, int author, String text) {
+            this.sequence = sequence;
+            this.author = author;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The SharedWorld is one map of towns that many hunters play on at once.<p>
+ * Every game on it builds its towns from the same seed, so they all see the same terrain and treasure in the same
+ * places, and each town's treasure, gold and brawlers are one SharedTown that all of them contend for. The towns of
+ * each mode are kept apart, since the modes build different towns. A SharedTown is made the first time any hunter
+ * reaches the town; after that finding it is a read of a concurrent map, with no lock.<p>
+ * Each game joins the world once and is given a number its stories are posted under, which it keeps in its
+ * snapshots, so parking and resuming a game doesn't give it a new one.<p>
+ * The shared towns are only kept in memory, so after a restart the towns are built again with everything in them.<p>
+ * Usage: SharedWorld [hunters] [rounds] to send hunters into one town at once and check every treasure, dig and
+ * brawler was only claimed as many times as it should have been.
+ */
+
+public class SharedWorld {
+    // constants
+    public static final int TOUGH_BRAWLERS = 8;
+    public static final int MILD_BRAWLERS = 3;
+
+    // instance variables
+    private long seed;
+    private AtomicInteger authors;
+    private ConcurrentHashMap<String, ConcurrentHashMap<Integer, SharedTown>> towns;
+
+    /**
+     * Creates a world nobody has played on yet.
+     *
+     * @param seed The seed every game on the world builds its towns from.
+     */
+    public SharedWorld(long seed) {
+        this.seed = seed;
+        authors = new AtomicInteger();
+        towns = new ConcurrentHashMap<>();
+    }
+
+    //Accessors
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of towns any hunter has reached so far, in every mode.
+     */
+    public int getTownCount() {
+        int count = 0;
+        for (ConcurrentHashMap<Integer, SharedTown> modeTowns : towns.values()) {
+            count += modeTowns.size();
+        }
+        return count;
+    }
+
+    /**
+     * Gives a game joining the world the number its hunter's stories are posted under in every town.
+     *
+     * @return a number, from 1 up, that no other game on the world has.
+     */
+    public int join() {
+        return authors.incrementAndGet();
+    }
+
+    /**
+     * Lets a game that already has a number, as a restored one does, keep it; no game joining later is given it.
+     *
+     * @param author The game's number, from join().
+     */
+    public void rejoin(int author) {
+        authors.accumulateAndGet(author, Math::max);
+    }
+
+    /**
+     * Finds the shared part of a town, making it if nobody has been there yet.
+     *
+     * @param mode The game mode.
+     * @param id The number of the town.
+     * @param tough Whether it is a tough town, which has more brawlers.
+     * @return the shared town.
+     */
+    public SharedTown getTown(String mode, int id, boolean tough) {
+        ConcurrentHashMap<Integer, SharedTown> modeTowns = towns.get(mode);
+        if (modeTowns == null) {
+            modeTowns = towns.computeIfAbsent(mode, m -> new ConcurrentHashMap<>());
+        }
+        SharedTown town = modeTowns.get(id);
+        if (town == null) {
+            town = modeTowns.computeIfAbsent(id, i -> new SharedTown(tough ? TOUGH_BRAWLERS : MILD_BRAWLERS));
+        }
+        return town;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int hunters = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        SharedWorld world = new SharedWorld(1);
+        AtomicInteger treasures = new AtomicInteger();
+        AtomicInteger digs = new AtomicInteger();
+        AtomicInteger beaten = new AtomicInteger();
+        AtomicInteger tooMany = new AtomicInteger();
+
+        // in every round each hunter searches, digs and picks a fight in the same town as all the others
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            SharedTown town = world.getTown("n", round, round % 2 == 0);
+            int brawlers = town.getBrawlers();
+            AtomicInteger fighting = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(hunters);
+            for (int h = 0; h < hunters; h++) {
+                String name = "hunter " + h;
+                boolean wins = h % 3 == 0;
+                Thread.ofVirtual().start(() -> {
+                    int author = world.join();
+                    if (town.claimTreasure()) {
+                        treasures.incrementAndGet();
+                        town.post(author, name + " found the treasure.");
+                    }
+                    if (town.claimDig()) {
+                        digs.incrementAndGet();
+                    }
+                    if (town.claimBrawler()) {
+                        if (fighting.incrementAndGet() > brawlers) {
+                            tooMany.incrementAndGet();
+                        }
+                        fighting.decrementAndGet();
+                        if (wins) {
+                            beaten.incrementAndGet();
+                        } else {
+                            town.releaseBrawler();
+                        }
+                    }
+                    town.readNews(author, 0, new StringBuilder());
+                    done.countDown();
+                });
+            }
+            done.await();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int brawlersInTowns = rounds / 2 * TOUGH_BRAWLERS + (rounds - rounds / 2) * MILD_BRAWLERS;
+        System.out.println(String.format("%,d hunters in each of %,d towns: %.1f us per hunter per town",
+                hunters, rounds, elapsed / 1e3 / hunters / rounds));
+        System.out.println("Treasures found: " + treasures + " of " + rounds + ", towns dug: " + digs + " of " + rounds
+                + ", brawlers beaten: " + beaten + " of " + brawlersInTowns
+                + (tooMany.get() == 0 ? ", and no brawler ever fought two hunters at once." : ", but " + tooMany + " fights had too many brawlers."));
+    }
+}
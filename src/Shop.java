@@ -1,39 +1,74 @@
-import java.util.Scanner;
+import java.io.PrintStream;
 
 /**
  * The Shop class controls the cost of the items in the Treasure Hunt game. <p>
  * The Shop class also acts as a go between for the Hunter's buyItem() method. <p>
+ * While the Market is on, every price is moved by the item's market factor, and every sale is recorded on the market. <p>
+ * The questions are printed straight away, but the outcome of a visit goes through the game's MenuRenderer when it
+ * has one, so in ANSI mode it is shown in the next frame rather than cleared by it. In a scripted game the
+ * questions and the list of wares aren't printed at all, only the outcome. <p>
  * This code has been adapted from Ivan Turner's original program -- thank you, Mr. Turner!
  */
 
 public class Shop {
-    // constants
-    private static final int SWORD_COST = 0;
-    private static final int WATER_COST = 2;
-    private static final int ROPE_COST = 4;
-    private static final int BOOTS_COST = 6;
-    private static final int MACHETE_COST = 6;
-    private static final int SHOVEL_COST = 8;
-    private static final int HORSE_COST = 12;
-    private static final int BOAT_COST = 20;
-
-    // static variables
-    private static final Scanner SCANNER = new Scanner(System.in);
-
     // instance variables
+    private Rules rules;
     private double markdown;
     private Hunter customer;
     private String mode;
+    private Policy policy;
+    private PrintStream out;
+    private MenuRenderer renderer;
+    private boolean scripted;
+    private GameRandom random;
+    private int[] buyPrices;
+    private int[] buyBackPrices;
+    private long waitNanos; // how long the last visit waited for the customer's answers, while metrics are on
 
     /**
-     * The Shop constructor takes in a markdown value and leaves customer null until one enters the shop.
+     * The Shop constructor takes in a markdown value and leaves customer null until one enters the shop.<p>
+     * The prices come from the rules currently in force for the mode.
      *
      * @param markdown Percentage of markdown for selling items in decimal format.
+     * @param policy Where the customer's answers come from.
+     * @param out Where the shopkeeper talks to, or null to run without printing anything.
+     * @param random Where the shop's random rolls come from.
+     */
+    public Shop(double markdown, String mode, Policy policy, PrintStream out, GameRandom random) {
+        this(Rules.forMode(mode), markdown, mode, policy, out, random);
+    }
+
+    /**
+     * Creates a shop that sells at the prices in the given rules.
+     *
+     * @param rules The rules for the game's mode.
+     * @param policy Where the customer's answers come from.
+     * @param out Where the shopkeeper talks to, or null to run without printing anything.
+     * @param random Where the shop's random rolls come from.
      */
-    public Shop(double markdown, String mode) {
+    public Shop(Rules rules, String mode, Policy policy, PrintStream out, GameRandom random) {
+        this(rules, rules.getMarkdown(), mode, policy, out, random);
+    }
+
+    /**
+     * The buy and buy back price of every item is worked out here, once, so a quote is just an array lookup.
+     */
+    private Shop(Rules rules, double markdown, String mode, Policy policy, PrintStream out, GameRandom random) {
+        this.rules = rules;
         this.markdown = markdown;
         customer = null; // is set in the enter method
         this.mode = mode;
+        this.policy = policy;
+        this.out = out;
+        this.random = random;
+
+        int items = Item.values().length;
+        buyPrices = new int[items];
+        buyBackPrices = new int[items];
+        for (int i = 0; i < items; i++) {
+            buyPrices[i] = rules.getCost(Item.fromOrdinal(i));
+            buyBackPrices[i] = (int) (buyPrices[i] * markdown);
+        }
     }
 
     /**
@@ -44,81 +79,162 @@ public class Shop {
      */
     public void enter(Hunter hunter, String buyOrSell) {
         customer = hunter;
+        waitNanos = 0;
 
         if (buyOrSell.equals("b")) {
-            System.out.println("Welcome to the shop! We have the finest wares in town.");
-            System.out.println("Currently we have the following items:");
-            System.out.println(inventory());
-            System.out.print("What're you lookin' to buy? ");
-            String item = SCANNER.nextLine().toLowerCase();
-            int cost = checkMarketPrice(item, true);
-            if (cost == 0 && (!item.equals("sword") || !mode.equals("s"))) {
-                System.out.println("We ain't got none of those.");
+            if (out != null && !scripted) {
+                out.println("Welcome to the shop! We have the finest wares in town.");
+                out.println("Currently we have the following items:");
+                out.println(inventory());
+                out.print("What're you lookin' to buy? ");
+            }
+            long asked = startWaiting();
+            String item = policy.chooseShopItem(customer, true);
+            stopWaiting(asked);
+            Item wanted = Item.fromName(item);
+            int cost = checkMarketPrice(wanted, true);
+            if (cost == 0 && (wanted != Item.SWORD || !mode.equals("s"))) {
+                println("We ain't got none of those.");
             } else {
-                System.out.print("It'll cost you " + cost + " gold. Buy it (y/n)? ");
-                String option = SCANNER.nextLine().toLowerCase();
+                if (out != null && !scripted) {
+                    out.print("It'll cost you " + cost + " gold. Buy it (y/n)? ");
+                }
+                asked = startWaiting();
+                String option = policy.confirm(customer, item, cost, true);
+                stopWaiting(asked);
 
                 if (option.equals("y")) {
-                    buyItem(item);
+                    buyItem(wanted, cost);
                 }
             }
         } else {
-            System.out.println("What're you lookin' to sell? ");
-            System.out.print("You currently have the following items: " + customer.getContainer(customer.getKit()));
-            String item = SCANNER.nextLine().toLowerCase();
-            int cost = checkMarketPrice(item, false);
+            if (out != null && !scripted) {
+                out.println("What're you lookin' to sell? ");
+                out.print("You currently have the following items: " + customer.getContainer(customer.getKit()));
+            }
+            long asked = startWaiting();
+            String item = policy.chooseShopItem(customer, false);
+            stopWaiting(asked);
+            Item offered = Item.fromName(item);
+            int cost = checkMarketPrice(offered, false);
             if (cost == 0) {
-                String text = "We don't want none of those.";
-                if (item.equals("sword")) {
-                    text += Colors.GREEN + " We're scared you'll threaten us with the sword if you hold it out." + Colors.RESET;
+                if (out != null) {
+                    String text = "We don't want none of those.";
+                    if (offered == Item.SWORD) {
+                        text += Colors.GREEN + " We're scared you'll threaten us with the sword if you hold it out." + Colors.RESET;
+                    }
+                    println(text);
                 }
-                System.out.println(text);
             } else {
-                System.out.print(Colors.RESET + "It'll get you " + cost + " gold. Sell it (y/n)? ");
-                String option = SCANNER.nextLine().toLowerCase();
+                if (out != null && !scripted) {
+                    out.print(Colors.RESET + "It'll get you " + cost + " gold. Sell it (y/n)? ");
+                }
+                asked = startWaiting();
+                String option = policy.confirm(customer, item, cost, false);
+                stopWaiting(asked);
 
                 if (option.equals("y")) {
-                    sellItem(item);
+                    sellItem(offered, cost);
                 }
             }
         }
     }
 
+    /**
+     * @return how long the last visit to the shop spent waiting for the customer's answers, in nanoseconds,
+     * or 0 if metrics are off.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Starts timing a wait for the customer, if metrics are on.
+     *
+     * @return the time the wait started, or 0 if it isn't timed.
+     */
+    private long startWaiting() {
+        return GameMetrics.current() != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds a wait for the customer to the visit's waiting time.
+     *
+     * @param asked The time the wait started, or 0 if it isn't timed.
+     */
+    private void stopWaiting(long asked) {
+        if (asked != 0) {
+            waitNanos += System.nanoTime() - asked;
+        }
+    }
+
     /**
      * A method that returns a string showing the items available in the shop
      * (all shops sell the same items).
      *
      * @return the string representing the shop'
      * items available for purchase and their prices.
+     * While the Market is on the list is written out each time, at the prices the shop would charge now.
      */
     public String inventory() {
-        String str = "";
-        if (mode.equals("s")) {
-            str += "Sword: " + SWORD_COST + " gold\n";
+        boolean samurai = mode.equals("s");
+        if (Market.current() == null) {
+            return rules.getInventory(samurai);
+        }
+        String str = samurai ? listing(Item.SWORD) : "";
+        for (int i = 0; i < Item.SWORD.ordinal(); i++) {
+            str += listing(Item.fromOrdinal(i));
         }
-        str += "Water: " + WATER_COST + " gold\n";
-        str += "Rope: " + ROPE_COST + " gold\n";
-        str += "Boots: " + BOOTS_COST + " gold\n";
-        str += "Machete: " + MACHETE_COST + " gold\n";
-        str += "Shovel: " + SHOVEL_COST + " gold\n";
-        str += "Horse: " + HORSE_COST + " gold\n";
-        str += "Boat: " + BOAT_COST + " gold\n";
-
         return str;
     }
 
+    /**
+     * @return an item's line in the shop's list, at its market price.
+     */
+    private String listing(Item item) {
+        String name = item.getName();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1) + ": " + checkMarketPrice(item, true) + " gold\n";
+    }
+
     /**
      * A method that lets the customer (a Hunter) buy an item.
      *
      * @param item The item being bought.
      */
     public void buyItem(String item) {
-        int costOfItem = checkMarketPrice(item, true);
-        if (customer.buyItem(item, costOfItem, mode)) {
-            System.out.println("Ye' got yerself a " + item + ". Come again soon.");
+        Item wanted = Item.fromName(item);
+        buyItem(wanted, checkMarketPrice(wanted, true));
+    }
+
+    /**
+     * Lets the customer buy an item that has already been priced.
+     *
+     * @param item The item being bought, or null if there is no such item.
+     * @param costOfItem The price quoted for the item.
+     */
+    private void buyItem(Item item, int costOfItem) {
+        ShopTransactionEvent event = new ShopTransactionEvent();
+        event.begin();
+        boolean bought = customer.buyItem(item, costOfItem, mode);
+        if (bought) {
+            if (mode.equals("s") && item != Item.SWORD) {
+                // the roll is taken even when nothing is printed so every run uses the same random numbers
+                String[] fragileItems = {"water", "rope", "boots", "shovel", "a lampshade", "a painting"};
+                int randItem = (int) (random.nextDouble() * 6);
+                if (out != null) {
+                    println(Colors.GREEN + "Wait, what are you doing? Why are you pulling out that sword?\n"
+                            + "You slash " + fragileItems[randItem] + ". You are given " + Colors.PURPLE + item + Colors.GREEN + " for free." + Colors.RESET);
+                }
+            }
+            Market market = Market.current();
+            if (market != null) {
+                market.recordBuy(item);
+            }
+            println("Ye' got yerself a " + item + ". Come again soon.");
         } else {
-            System.out.println("Hmm, either you don't have enough gold or you've already got one of those!");
+            println("Hmm, either you don't have enough gold or you've already got one of those!");
         }
+        commit(event, item, costOfItem, true, bought);
     }
 
     /**
@@ -127,11 +243,47 @@ public class Shop {
      * @param item The item being sold.
      */
     public void sellItem(String item) {
-        int buyBackPrice = checkMarketPrice(item, false);
-        if (customer.sellItem(item, buyBackPrice)) {
-            System.out.println("Pleasure doin' business with you.");
+        Item offered = Item.fromName(item);
+        sellItem(offered, checkMarketPrice(offered, false));
+    }
+
+    /**
+     * Lets the Hunter sell an item that has already been priced.
+     *
+     * @param item The item being sold, or null if there is no such item.
+     * @param buyBackPrice The price quoted for the item.
+     */
+    private void sellItem(Item item, int buyBackPrice) {
+        ShopTransactionEvent event = new ShopTransactionEvent();
+        event.begin();
+        boolean sold = customer.sellItem(item, buyBackPrice);
+        if (sold) {
+            Market market = Market.current();
+            if (market != null) {
+                market.recordSell(item);
+            }
+            println("Pleasure doin' business with you.");
         } else {
-            System.out.println("Stop stringin' me along!");
+            println("Stop stringin' me along!");
+        }
+        commit(event, item, buyBackPrice, false, sold);
+    }
+
+    /**
+     * Ends a transaction event and, if it is being recorded, fills it in and commits it.<p>
+     * The fields are only filled in when a recording wants the event, so it costs next to nothing otherwise.
+     */
+    private void commit(ShopTransactionEvent event, Item item, int price, boolean buying, boolean succeeded) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.hunter = customer.getHunterName();
+            event.mode = mode;
+            event.gold = customer.getGold();
+            event.item = item == null ? null : item.getName();
+            event.price = price;
+            event.buying = buying;
+            event.succeeded = succeeded;
+            event.commit();
         }
     }
 
@@ -143,39 +295,42 @@ public class Shop {
      * @return The cost of buying or selling the item based on the isBuying parameter.
      */
     public int checkMarketPrice(String item, boolean isBuying) {
+        return checkMarketPrice(Item.fromName(item), isBuying);
+    }
+
+    /**
+     * Determines and returns the cost of buying or selling an item.<p>
+     * The prices in the rules are looked up in an array; if the market is on they are moved by its factor for the item.
+     *
+     * @param item The item in question, or null if there is no such item.
+     * @param isBuying Whether the item is being bought or sold.
+     * @return The cost of buying or selling the item based on the isBuying parameter.
+     */
+    public int checkMarketPrice(Item item, boolean isBuying) {
+        if (item == null) {
+            return 0;
+        }
+        int price = buyPrices[item.ordinal()];
+        Market market = Market.current();
+        if (market == null || price == 0) {
+            return isBuying ? price : buyBackPrices[item.ordinal()];
+        }
+        double factor = market.getFactor(item);
         if (isBuying) {
-            return getCostOfItem(item);
+            return Math.max(1, (int) Math.round(price * factor));
         } else {
-            return getBuyBackCost(item);
+            return (int) (price * markdown * factor);
         }
     }
 
     /**
-     * Checks the item entered against the costs listed in the static variables.
+     * Checks the item entered against the costs in the shop's rules.
      *
      * @param item The item being checked for cost.
      * @return The cost of the item or 0 if the item is not found.
      */
     public int getCostOfItem(String item) {
-        if (item.equals("sword")) {
-            return SWORD_COST;
-        } else if (item.equals("water")) {
-            return WATER_COST;
-        } else if (item.equals("rope")) {
-            return ROPE_COST;
-        } else if (item.equals("boots")) {
-            return BOOTS_COST;
-        } else if (item.equals("machete")) {
-            return MACHETE_COST;
-        } else if (item.equals("shovel")) {
-                return SHOVEL_COST;
-        } else if (item.equals("horse")) {
-            return HORSE_COST;
-        } else if (item.equals("boat")) {
-            return BOAT_COST;
-        } else {
-            return 0;
-        }
+        return checkMarketPrice(Item.fromName(item), true);
     }
 
     /**
@@ -185,7 +340,38 @@ public class Shop {
      * @return The sell price of the item.
      */
     public int getBuyBackCost(String item) {
-        int cost = (int) (getCostOfItem(item) * markdown);
-        return cost;
+        return checkMarketPrice(Item.fromName(item), false);
+    }
+
+    /**
+     * Sets where the outcome of a visit is printed.
+     *
+     * @param renderer The game's renderer, or null to print it straight to the shop's stream.
+     */
+    public void setRenderer(MenuRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Sets whether the shop is visited from a script, in which case it only prints the outcome of a visit.
+     *
+     * @param scripted Whether the game is played from a script.
+     */
+    public void setScripted(boolean scripted) {
+        this.scripted = scripted;
+    }
+
+    /**
+     * Prints a line for the customer through the game's renderer if there is one, unless the shop is running
+     * without a console.
+     *
+     * @param message The line to print.
+     */
+    private void println(String message) {
+        if (renderer != null) {
+            renderer.message(message);
+        } else if (out != null) {
+            out.println(message);
+        }
     }
-}
\ No newline at end of file
+}
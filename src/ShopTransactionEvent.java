@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a hunter buying or selling an item (Shop.buyItem and Shop.sellItem).
+ */
+
+@Name("treasurehunter.ShopTransaction")
+@Label("Shop Transaction")
+@Category("Treasure Hunter")
+@Description("A hunter buys or sells an item at the shop")
+public class ShopTransactionEvent extends jdk.jfr.Event {
+    @Label("Hunter")
+    String hunter;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Gold")
+    @Description("The hunter's gold after the transaction")
+    int gold;
+
+    @Label("Item")
+    String item;
+
+    @Label("Price")
+    int price;
+
+    @Label("Buying")
+    boolean buying;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
@@ -0,0 +1,64 @@
+/**
+ * The Simulation class plays Treasure Hunter games back-to-back without a console.<p>
+ * Every decision comes from a Policy and nothing is printed, so games run as fast as the CPU allows.
+ */
+
+public class Simulation {
+    // instance variables
+    private Policy policy;
+    private GameRandom random;
+
+    /**
+     * Creates a simulation whose games are all played by the same policy.
+     *
+     * @param policy The policy making every decision.
+     * @param random Where the random rolls of every game come from.
+     */
+    public Simulation(Policy policy, GameRandom random) {
+        this.policy = policy;
+        this.random = random;
+    }
+
+    /**
+     * Plays a number of whole games one after the other.
+     *
+     * @param games How many games to play.
+     * @return The outcomes of all the games.
+     */
+    public SimulationResults run(long games) {
+        SimulationResults results = new SimulationResults();
+        for (long i = 0; i < games; i++) {
+            TreasureHunter game = new TreasureHunter(policy, null, random);
+            game.play();
+            results.record(game);
+        }
+        return results;
+    }
+
+    /**
+     * Runs a batch of games with the random bot and prints the outcomes.<p>
+     * Usage: Simulation [games] [mode] [maxTurns] [threads] [seed]<p>
+     * With more than one thread the games are shared out by a ParallelSimulation.
+     */
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        String mode = args.length > 1 ? args[1].toLowerCase() : "n";
+        int maxTurns = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        GameRandom random = args.length > 4 ? new GameRandom(Long.parseLong(args[4])) : new GameRandom();
+
+        long start = System.nanoTime();
+        SimulationResults results;
+        if (threads > 1) {
+            try (ParallelSimulation simulation = new ParallelSimulation(workerRandom -> new RandomPolicy(mode, maxTurns, workerRandom), threads)) {
+                results = simulation.run(games, random);
+            }
+        } else {
+            results = new Simulation(new RandomPolicy(mode, maxTurns, random), random).run(games);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(results);
+        System.out.println(String.format("%.0f games per minute", games / seconds * 60));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * The SimulationResults class adds up the outcomes of many headless games.<p>
+ * Every game ends in one of three ways: the hunter wins, goes broke, or quits.
+ */
+
+public class SimulationResults {
+    // instance variables
+    private long games;
+    private long wins;
+    private long broke;
+    private long quits;
+    private long totalTurns;
+
+    /**
+     * Adds the outcome of a finished game to the results.
+     *
+     * @param game The game that just finished.
+     */
+    public void record(TreasureHunter game) {
+        games++;
+        totalTurns += game.getTurns();
+        if (game.isWin()) {
+            wins++;
+        } else if (game.getHunter().isBroke()) {
+            broke++;
+        } else {
+            quits++;
+        }
+    }
+
+    /**
+     * Adds another set of results to this one.
+     *
+     * @param other The results to add.
+     */
+    public void merge(SimulationResults other) {
+        games += other.games;
+        wins += other.wins;
+        broke += other.broke;
+        quits += other.quits;
+        totalTurns += other.totalTurns;
+    }
+
+    //Accessors
+    public long getGames() {
+        return games;
+    }
+
+    public long getWins() {
+        return wins;
+    }
+
+    public long getBroke() {
+        return broke;
+    }
+
+    public long getQuits() {
+        return quits;
+    }
+
+    public long getTotalTurns() {
+        return totalTurns;
+    }
+
+    /**
+     * @return A summary of the outcomes, with the share of games for each.
+     */
+    public String toString() {
+        String str = "Games: " + games;
+        str += "\nWins: " + wins + " (" + percent(wins) + "%)";
+        str += "\nBroke: " + broke + " (" + percent(broke) + "%)";
+        str += "\nQuits: " + quits + " (" + percent(quits) + "%)";
+        if (games > 0) {
+            str += "\nAverage turns: " + String.format("%.2f", (double) totalTurns / games);
+        }
+        return str;
+    }
+
+    private String percent(long count) {
+        if (games == 0) {
+            return "0.00";
+        }
+        return String.format("%.2f", 100.0 * count / games);
+    }
+}
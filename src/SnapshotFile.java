@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The SnapshotFile hibernates paused games in a memory-mapped file, one SessionSnapshot per slot.<p>
+ * Every slot is the same size and starts with the length of the snapshot in it, 0 for a free slot.
+ * Hibernating a game writes its snapshot straight into the mapped slot and waking it restores the game
+ * from there, so neither touches the disk on the way; the operating system writes the pages out in its own
+ * time, or when force() is called. Games left in the file when the JVM stops are still there when it is
+ * opened again.<p>
+ * Different slots can be hibernated and woken from different threads at once; free slots are handed out
+ * from a concurrent queue.<p>
+ * Usage: SnapshotFile [file] [games] [turns before hibernating] to time hibernating and waking random games,
+ * and check that each one carries on exactly as if it had never stopped.
+ */
+
+public class SnapshotFile implements AutoCloseable {
+    // constants
+    public static final int DEFAULT_SLOT_SIZE = 128;
+    private static final int MAGIC = 0x54485331; // "THS1"
+    private static final int HEADER_SIZE = 16;
+    private static final int LENGTH_SIZE = 2;
+
+    // instance variables
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int slots;
+    private int slotSize;
+    private ConcurrentLinkedQueue<Integer> free;
+
+    /**
+     * Opens a snapshot file, creating it with every slot free if it doesn't exist yet.
+     *
+     * @param file The file.
+     * @param slots The number of slots in a new file.
+     * @param slotSize The size of each slot in a new file, including the 2 byte length.
+     * @throws IOException if the file can't be opened or mapped, or isn't a snapshot file.
+     */
+    public SnapshotFile(Path file, int slots, int slotSize) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        if (!created) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != SessionSnapshot.VERSION) {
+                channel.close();
+                throw new IOException(file + " is not a snapshot file");
+            }
+            slots = header.getInt();
+            slotSize = header.getInt();
+        }
+        if ((long) slots * slotSize + HEADER_SIZE > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IllegalArgumentException("A snapshot file can't be bigger than 2 GB");
+        }
+        this.slots = slots;
+        this.slotSize = slotSize;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * slotSize);
+        if (created) {
+            map.putInt(0, MAGIC).putInt(4, SessionSnapshot.VERSION).putInt(8, slots).putInt(12, slotSize);
+        }
+
+        free = new ConcurrentLinkedQueue<>();
+        for (int slot = 0; slot < slots; slot++) {
+            if (getLength(slot) == 0) {
+                free.add(slot);
+            }
+        }
+    }
+
+    //Accessors
+    public int getSlots() {
+        return slots;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * @return the number of free slots.
+     */
+    public int getFreeSlots() {
+        return free.size();
+    }
+
+    /**
+     * @return the slots that hold a hibernating game, such as the ones left from the last time the file was open.
+     */
+    public List<Integer> getHibernating() {
+        List<Integer> used = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot++) {
+            if (getLength(slot) != 0) {
+                used.add(slot);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Saves a paused game into a free slot.
+     *
+     * @param game The game.
+     * @return the slot, or -1 if every slot is taken.
+     * @throws IllegalArgumentException if the game's snapshot doesn't fit in a slot.
+     */
+    public int hibernate(TreasureHunter game) {
+        int size = SessionSnapshot.size(game);
+        if (size > slotSize - LENGTH_SIZE) {
+            throw new IllegalArgumentException("A " + size + " byte snapshot doesn't fit in a slot");
+        }
+        Integer slot = free.poll();
+        if (slot == null) {
+            return -1;
+        }
+        ByteBuffer buffer = slot(slot);
+        buffer.position(LENGTH_SIZE);
+        SessionSnapshot.save(game, buffer);
+        // the length goes in last, so a slot is never marked used with half a snapshot in it
+        buffer.putShort(0, (short) size);
+        return slot;
+    }
+
+    /**
+     * Restores the game in a slot and frees the slot.
+     *
+     * @param slot The slot.
+     * @param policy Where the game's decisions come from from now on.
+     * @param out Where the game is printed, or null to play without printing anything.
+     * @return the game, ready to resume().
+     * @throws IllegalArgumentException if the slot is empty.
+     */
+    public TreasureHunter wake(int slot, Policy policy, PrintStream out) {
+        if (getLength(slot) == 0) {
+            throw new IllegalArgumentException("Slot " + slot + " is empty");
+        }
+        ByteBuffer buffer = slot(slot);
+        buffer.position(LENGTH_SIZE);
+        TreasureHunter game = SessionSnapshot.restore(buffer, policy, out);
+        buffer.putShort(0, (short) 0);
+        free.add(slot);
+        return game;
+    }
+
+    /**
+     * Writes every slot out to the disk.
+     */
+    public void force() {
+        map.force();
+    }
+
+    /**
+     * Writes every slot out and closes the file; the map itself goes when it is garbage collected.
+     */
+    public void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer slot(int slot) {
+        return map.slice(HEADER_SIZE + slot * slotSize, slotSize);
+    }
+
+    private int getLength(int slot) {
+        return map.getShort(HEADER_SIZE + slot * slotSize) & 0xFFFF;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "snapshots.dat");
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int pauseAt = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String[] modes = {"e", "n", "h", "s"};
+
+        // play every game up to the pause, and each one all the way through with the same seeds to compare with
+        TreasureHunter[] paused = new TreasureHunter[games];
+        PausingPolicy[] policies = new PausingPolicy[games];
+        String[] expected = new String[games];
+        for (int i = 0; i < games; i++) {
+            String mode = modes[i % modes.length];
+            TreasureHunter whole = new TreasureHunter(new RandomPolicy(mode, 200, new GameRandom(-i)), null, new GameRandom(i));
+            whole.play();
+            expected[i] = Journal.describe(whole.getHunter()) + " after " + whole.getTurns() + " turns";
+
+            policies[i] = new PausingPolicy(new RandomPolicy(mode, 200, new GameRandom(-i)), pauseAt);
+            paused[i] = new TreasureHunter(policies[i], null, new GameRandom(i));
+            paused[i].play();
+        }
+
+        int[] slots = new int[games];
+        long bytes = 0;
+        for (TreasureHunter game : paused) {
+            bytes += SessionSnapshot.size(game);
+        }
+        Files.deleteIfExists(path);
+        try (SnapshotFile file = new SnapshotFile(path, games, DEFAULT_SLOT_SIZE)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < games; i++) {
+                slots[i] = file.hibernate(paused[i]);
+            }
+            long hibernated = System.nanoTime();
+            TreasureHunter[] woken = new TreasureHunter[games];
+            for (int i = 0; i < games; i++) {
+                paused[i] = null;
+                woken[i] = file.wake(slots[i], policies[i], null);
+            }
+            long done = System.nanoTime();
+
+            int mismatches = 0;
+            for (int i = 0; i < games; i++) {
+                if (!woken[i].isPaused()) {
+                    continue; // it had already finished before the pause
+                }
+                woken[i].resume();
+                String actual = Journal.describe(woken[i].getHunter()) + " after " + woken[i].getTurns() + " turns";
+                if (!actual.equals(expected[i])) {
+                    mismatches++;
+                }
+            }
+
+            System.out.println(String.format("%,d games, %.1f bytes per snapshot", games, (double) bytes / games));
+            System.out.println(String.format("Hibernate: %.2f us per game, wake: %.2f us per game",
+                    (hibernated - start) / 1e3 / games, (done - hibernated) / 1e3 / games));
+            System.out.println(mismatches == 0 ? "Every woken game finished the same as it would have without stopping."
+                    : mismatches + " woken games finished differently.");
+        }
+    }
+}
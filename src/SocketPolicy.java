@@ -0,0 +1,114 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The SocketPolicy reads every decision from a player connected to the GameServer, one line at a time.<p>
+ * It answers the same way the ConsolePolicy does, except that if the player says nothing at the main menu
+ * for as long as the socket's read timeout, it pauses the game so the server can park it. A line the player
+ * was halfway through typing is kept, and the shop's questions simply wait as long as it takes.
+ */
+
+public class SocketPolicy implements Policy {
+    // constants
+    private static final int MAX_LINE = 1024;
+
+    // instance variables
+    private Socket socket;
+    private BufferedInputStream in;
+    private PrintStream out;
+    private byte[] line;
+    private int length;
+
+    /**
+     * Creates a policy that reads from a socket, after flushing whatever the game printed.
+     *
+     * @param socket The player's connection; its read timeout is how long the player can be idle at the menu.
+     * @param out The stream to flush before every read.
+     */
+    public SocketPolicy(Socket socket, PrintStream out) throws IOException {
+        this.socket = socket;
+        this.out = out;
+        in = new BufferedInputStream(socket.getInputStream());
+        line = new byte[64];
+    }
+
+    public String chooseName() {
+        return readLine(false);
+    }
+
+    public String chooseMode() {
+        return readLine(false);
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        return readLine(true);
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return readLine(false);
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return readLine(false);
+    }
+
+    /**
+     * Waits, with no timeout, until the player sends something or hangs up, without reading it.
+     */
+    public void awaitInput() {
+        try {
+            int timeout = socket.getSoTimeout();
+            socket.setSoTimeout(0);
+            in.mark(1);
+            in.read();
+            in.reset();
+            socket.setSoTimeout(timeout);
+        } catch (IOException e) {
+            // the next read finds the player gone and ends the game
+        }
+    }
+
+    /**
+     * Reads the next answer and lower cases it.<p>
+     * If the player hung up the answer is "x", which ends the game.
+     *
+     * @param canPause Whether to give up and return null if the player is idle until the read times out.
+     * @return the player's answer, or null.
+     */
+    private String readLine(boolean canPause) {
+        out.flush();
+        while (true) {
+            int b;
+            try {
+                b = in.read();
+            } catch (SocketTimeoutException e) {
+                if (canPause) {
+                    return null;
+                }
+                continue;
+            } catch (IOException e) {
+                return "x";
+            }
+            if (b < 0) {
+                return "x";
+            }
+            if (b == '\n') {
+                int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+                String answer = new String(line, 0, end, StandardCharsets.UTF_8).toLowerCase();
+                length = 0;
+                return answer;
+            }
+            if (length == line.length && length < MAX_LINE) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            if (length < line.length) {
+                line[length++] = (byte) b;
+            }
+        }
+    }
+}
@@ -0,0 +1,517 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The Solver works out the best possible way to play a mode, and how often a perfect player wins it.<p>
+ * A state is the hunter's gold (up to a cap), kit and collection, plus the town's terrain and toughness
+ * and whether it has been searched and dug. The town's treasure is not part of the state, since the
+ * hunter can't see it before hunting; it is rolled when they hunt, which comes to the same thing.
+ * Moving on always arrives in a fresh town, the way the world looks to a hunter who never turns back.
+ * The real World is a graph, and a hunter moving through it often comes back to towns they have already
+ * searched and dug, so the model is optimistic: the chance of winning it predicts is higher than perfect play
+ * really gets, most of all in the tougher modes.<p>
+ * Every state's chance of winning is kept in a flat array of doubles and improved by value iteration:
+ * each sweep works out every state's best action from the values of the last sweep (Jacobi style), so the
+ * sweep can be split up across a fork-join pool without any locks. The chance of winning after arriving
+ * in a fresh town is worked out once per sweep, since every move lands there.<p>
+ * Usage: Solver [goldCap] [threads] [modes] [games]<p>
+ * With a number of games, each mode's best play is also played out in the real game by a SolverPolicy,
+ * and the measured win rate is printed next to the predicted one.
+ */
+
+public class Solver {
+    // constants
+    public static final int DEFAULT_GOLD_CAP = 40;
+    public static final double DEFAULT_EPSILON = 1e-6;
+    public static final int MAX_SWEEPS = 10_000;
+    public static final int MAX_TURNS = 1000;
+
+    // actions, as stored in the policy; buying and selling add the Item ordinal
+    public static final int QUIT = 0;
+    public static final int TROUBLE = 1;
+    public static final int HUNT = 2;
+    public static final int DIG = 3;
+    public static final int MOVE = 4;
+    public static final int BUY = 8;
+    public static final int SELL = 16;
+
+    // static variables
+    private static final int TOWN_STATES = 48; // terrain, tough, searched, dug
+    private static final int COLLECTIONS = 7; // every collection short of all three treasures
+    private static final int ALL_TREASURES = 7;
+    private static final int TREASURE_SHIFT = Item.CROWN.ordinal();
+    private static final int ROWS_PER_TASK = 256;
+
+    // instance variables
+    private String mode;
+    private int goldCap;
+    private int golds;
+    private int kits;
+    private int shopItems;
+    private boolean samurai;
+    private Rules rules;
+    private double[] townChances; // by terrain, then toughness
+    private double[] treasureChances; // by treasure index, the last one dust
+    private double[][] brawlWinChances; // by toughness then sword, and then the gold at stake
+    private double[][] brawlPayChances; // by toughness then sword, and then the gold at stake
+    private double[] brawlChances; // the chance of a brawl that counts, by toughness then sword
+    private double[] digChances; // by the gold found
+    private double breakChance;
+    private int[] buyCosts; // by Item ordinal
+    private int[] sellPrices; // by Item ordinal
+    private int[] crossingMasks; // by terrain
+    private int[] primaryBits; // by terrain
+    private double[] values;
+    private double[] nextValues;
+    private double[] arrivalValues;
+    private byte[] actions;
+    private ForkJoinPool pool;
+    private int sweeps;
+
+    /**
+     * Creates a solver for a mode that runs on the common fork-join pool.
+     *
+     * @param mode The game mode (e, n, h or s).
+     * @param goldCap The most gold a state keeps track of; anything above it counts as the cap.
+     */
+    public Solver(String mode, int goldCap) {
+        this(mode, goldCap, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a solver for a mode that runs on its own pool of worker threads.
+     *
+     * @param mode The game mode (e, n, h or s).
+     * @param goldCap The most gold a state keeps track of; anything above it counts as the cap.
+     * @param threads The number of worker threads.
+     */
+    public Solver(String mode, int goldCap, int threads) {
+        this(mode, goldCap, new ForkJoinPool(threads));
+    }
+
+    private Solver(String mode, int goldCap, ForkJoinPool pool) {
+        this.mode = mode;
+        this.goldCap = goldCap;
+        this.pool = pool;
+        golds = goldCap + 1;
+        samurai = mode.equals("s");
+        rules = Rules.forMode(mode);
+
+        // only the samurai can get hold of the sword
+        shopItems = samurai ? Item.SWORD.ordinal() + 1 : Item.SWORD.ordinal();
+        kits = 1 << shopItems;
+
+        // every chance comes from the same outcome tables the game rolls from
+        breakChance = rules.getBreakTable().getChance(1);
+        AliasTable digTable = rules.getDigTable();
+        digChances = new double[digTable.size()];
+        for (int found = 0; found < digChances.length; found++) {
+            digChances[found] = digTable.getChance(found);
+        }
+
+        // the chances of winning and of paying each amount of gold; no trouble, or a lost brawl
+        // that costs nothing, leaves the hunter where they were
+        int maxBrawlGold = rules.getMaxBrawlGold();
+        brawlWinChances = new double[4][maxBrawlGold + 1];
+        brawlPayChances = new double[4][maxBrawlGold + 1];
+        brawlChances = new double[4];
+        for (int b = 0; b < 4; b++) {
+            AliasTable brawlTable = rules.getBrawlTable(b >= 2, b % 2 == 1);
+            for (int outcome = 1; outcome < brawlTable.size(); outcome++) {
+                int kind = Rules.getBrawlKind(outcome);
+                int diff = Rules.getBrawlGold(outcome);
+                if (kind == Rules.KIND_WON) {
+                    brawlWinChances[b][diff] += brawlTable.getChance(outcome);
+                    brawlChances[b] += brawlTable.getChance(outcome);
+                } else if (kind == Rules.KIND_PAID) {
+                    brawlPayChances[b][diff] += brawlTable.getChance(outcome);
+                    brawlChances[b] += brawlTable.getChance(outcome);
+                }
+            }
+        }
+
+        double markdown = rules.getMarkdown();
+        buyCosts = new int[shopItems];
+        sellPrices = new int[shopItems];
+        for (int i = 0; i < shopItems; i++) {
+            int cost = rules.getCost(Item.fromOrdinal(i));
+            // the samurai's sword makes everything free
+            buyCosts[i] = samurai ? 0 : cost;
+            sellPrices[i] = (int) (cost * markdown);
+        }
+
+        int terrains = rules.getTerrainCount();
+        townChances = new double[terrains * 2];
+        treasureChances = new double[rules.getTreasureCount()];
+        AliasTable townTable = rules.getTownTable();
+        for (int outcome = 0; outcome < townTable.size(); outcome++) {
+            int tough = Rules.isTownTough(outcome) ? 1 : 0;
+            townChances[Rules.getTownTerrain(outcome) * 2 + tough] += townTable.getChance(outcome);
+            treasureChances[Rules.getTownTreasure(outcome)] += townTable.getChance(outcome);
+        }
+        crossingMasks = new int[terrains];
+        primaryBits = new int[terrains];
+        for (int t = 0; t < terrains; t++) {
+            Terrain terrain = rules.getTerrain(t);
+            crossingMasks[t] = terrain.getCrossingMask();
+            primaryBits[t] = Item.fromName(terrain.getNeededItem()).getBit();
+        }
+
+        int rows = COLLECTIONS * kits * golds;
+        values = new double[rows * TOWN_STATES];
+        nextValues = new double[values.length];
+        arrivalValues = new double[rows];
+        actions = new byte[values.length];
+    }
+
+    //Accessors
+    public String getMode() {
+        return mode;
+    }
+
+    public int getGoldCap() {
+        return goldCap;
+    }
+
+    /**
+     * @return the rules the solver was built with.
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the number of sweeps the last solve took.
+     */
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * @return the number of states.
+     */
+    public int getStateCount() {
+        return values.length;
+    }
+
+    /**
+     * Runs value iteration until no state's chance of winning changes by more than epsilon in a sweep.
+     *
+     * @param epsilon How small the largest change has to get.
+     * @param maxSweeps The most sweeps to run.
+     * @return the largest change in the last sweep.
+     */
+    public double solve(double epsilon, int maxSweeps) {
+        double change = Double.MAX_VALUE;
+        sweeps = 0;
+        while (change > epsilon && sweeps < maxSweeps) {
+            updateArrivalValues();
+            change = pool.invoke(new Sweep(0, arrivalValues.length));
+            double[] swap = values;
+            values = nextValues;
+            nextValues = swap;
+            sweeps++;
+        }
+        updateArrivalValues();
+        return change;
+    }
+
+    /**
+     * @return the chance of winning for a new hunter arriving in their first town.
+     */
+    public double getWinChance() {
+        return getArrivalWinChance(rules.getStartingGold(), 0, 0);
+    }
+
+    /**
+     * @param gold The hunter's gold.
+     * @param kit The hunter's kit, as a mask of Item bits.
+     * @param collection The hunter's collection, as a mask of Item bits.
+     * @return the chance of winning when arriving in a fresh town.
+     */
+    public double getArrivalWinChance(int gold, int kit, int collection) {
+        int treasures = collection >>> TREASURE_SHIFT;
+        if (treasures == ALL_TREASURES) {
+            return 1;
+        }
+        if (gold < 0) {
+            return 0;
+        }
+        return arrivalValues[row(treasures, kit, Math.min(gold, goldCap))];
+    }
+
+    /**
+     * @param gold The hunter's gold.
+     * @param kit The hunter's kit, as a mask of Item bits.
+     * @param collection The hunter's collection, as a mask of Item bits.
+     * @param terrain The index of the town's terrain, in Town.getNewTerrain order.
+     * @param tough Whether the town is tough.
+     * @param searched Whether the town has been searched.
+     * @param dug Whether the town has been dug.
+     * @return the chance of winning from the state.
+     */
+    public double getWinChance(int gold, int kit, int collection, int terrain, boolean tough, boolean searched, boolean dug) {
+        return values[index(gold, kit, collection, terrain, tough, searched, dug)];
+    }
+
+    /**
+     * @return the best action in the state, as one of the action codes.
+     */
+    public int getBestAction(int gold, int kit, int collection, int terrain, boolean tough, boolean searched, boolean dug) {
+        return actions[index(gold, kit, collection, terrain, tough, searched, dug)];
+    }
+
+    /**
+     * Looks up the best action for a hunter in a town.
+     *
+     * @param hunter The hunter.
+     * @param town The town the hunter is in.
+     * @return the best action, as one of the action codes.
+     */
+    public int getBestAction(Hunter hunter, Town town) {
+        int terrain = rules.getTerrainIndex(town.getTerrain());
+        return getBestAction(Math.max(hunter.getGold(), 0), hunter.getKitMask(), hunter.getCollectionMask(), terrain,
+                town.isToughTown(), town.isSearched(), town.isDug());
+    }
+
+    /**
+     * Writes an action code out the way it is typed at the menu.
+     *
+     * @param action An action code.
+     * @return the menu choice, followed by the item for buying and selling.
+     */
+    public static String describeAction(int action) {
+        if (action >= SELL) {
+            return "s " + Item.fromOrdinal(action - SELL);
+        }
+        if (action >= BUY) {
+            return "b " + Item.fromOrdinal(action - BUY);
+        }
+        return switch (action) {
+            case TROUBLE -> "l";
+            case HUNT -> "h";
+            case DIG -> "d";
+            case MOVE -> "m";
+            default -> "x";
+        };
+    }
+
+    public static void main(String[] args) {
+        int goldCap = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GOLD_CAP;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String modes = args.length > 2 ? args[2] : "enhs";
+        long games = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        for (int m = 0; m < modes.length(); m++) {
+            String mode = String.valueOf(modes.charAt(m));
+            long start = System.nanoTime();
+            Solver solver = new Solver(mode, goldCap, threads);
+            solver.solve(DEFAULT_EPSILON, MAX_SWEEPS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format("Mode %s: %,d states, %d sweeps in %.1f s", mode, solver.getStateCount(), solver.getSweeps(), seconds));
+            System.out.println(String.format("  Win chance with perfect play: %.2f%%", 100 * solver.getWinChance()));
+            String firstMoves = "  Best first move:";
+            Rules rules = solver.getRules();
+            for (int t = 0; t < rules.getTerrainCount(); t++) {
+                int action = solver.getBestAction(rules.getStartingGold(), 0, 0, t, false, false, false);
+                firstMoves += " " + rules.getTerrain(t).getTerrainName() + " (" + describeAction(action) + ")";
+            }
+            System.out.println(firstMoves);
+
+            if (games > 0) {
+                GameRandom random = new GameRandom(games);
+                Simulation simulation = new Simulation(new SolverPolicy(solver, MAX_TURNS), random);
+                SimulationResults results = simulation.run(games);
+                System.out.println("  Played out in the game:");
+                System.out.println(results);
+                System.out.println(String.format("  Win rate: %.2f%% predicted, %.2f%% played (the model never revisits a town, so it is optimistic)",
+                        100 * solver.getWinChance(), 100.0 * results.getWins() / results.getGames()));
+            }
+        }
+    }
+
+    /**
+     * Works out the chance of winning on arriving in a fresh town, from the current values.
+     */
+    private void updateArrivalValues() {
+        for (int row = 0; row < arrivalValues.length; row++) {
+            int base = row * TOWN_STATES;
+            double value = 0;
+            for (int t = 0; t < crossingMasks.length; t++) {
+                int town = base + t * 8;
+                value += townChances[t * 2 + 1] * values[town + 4] + townChances[t * 2] * values[town];
+            }
+            arrivalValues[row] = value;
+        }
+    }
+
+    /**
+     * Works out the best action for every state in a row (one gold, kit and collection) from the current values.
+     *
+     * @param row The row.
+     * @return the largest change in any state's value.
+     */
+    private double sweepRow(int row) {
+        int gold = row % golds;
+        int kit = (row / golds) % kits;
+        int treasures = row / golds / kits;
+        double change = 0;
+
+        for (int town = 0; town < TOWN_STATES; town++) {
+            int terrain = town >> 3;
+            int tough = (town >> 2) & 1;
+            boolean searched = (town & 2) != 0;
+            boolean dug = (town & 1) != 0;
+            int state = row * TOWN_STATES + town;
+            double stay = values[state];
+
+            double best = 0;
+            int bestAction = QUIT;
+
+            // look for trouble
+            int brawl = tough * 2 + (samurai && (kit & Item.SWORD.getBit()) != 0 ? 1 : 0);
+            double[] win = brawlWinChances[brawl];
+            double[] pay = brawlPayChances[brawl];
+            // finding no trouble, or fumbling the first strike, leaves the hunter where they were, and since
+            // looking again costs nothing, looking for trouble is worth what a brawl that counts is worth
+            double value = stay;
+            if (brawlChances[brawl] > 0) {
+                value = 0;
+                for (int diff = 1; diff < win.length; diff++) {
+                    value += win[diff] * goldValue(row, gold, diff, town) + pay[diff] * goldValue(row, gold, -diff, town);
+                }
+                value /= brawlChances[brawl];
+            }
+            if (value > best) {
+                best = value;
+                bestAction = TROUBLE;
+            }
+
+            // hunt for treasure
+            if (!searched) {
+                int searchedTown = town | 2;
+                int dust = treasureChances.length - 1;
+                value = treasureChances[dust] * values[row * TOWN_STATES + searchedTown];
+                for (int t = 0; t < dust; t++) {
+                    int found = treasures | (1 << t);
+                    if (found == ALL_TREASURES) {
+                        value += treasureChances[t];
+                    } else {
+                        value += treasureChances[t] * values[row(found, kit, gold) * TOWN_STATES + searchedTown];
+                    }
+                }
+                if (value > best) {
+                    best = value;
+                    bestAction = HUNT;
+                }
+            }
+
+            // dig for gold
+            if (!dug && (kit & Item.SHOVEL.getBit()) != 0) {
+                int dugTown = town | 1;
+                value = values[row * TOWN_STATES + dugTown] * digChances[0];
+                for (int found = 1; found < digChances.length; found++) {
+                    value += goldValue(row, gold, found, dugTown) * digChances[found];
+                }
+                if (value > best) {
+                    best = value;
+                    bestAction = DIG;
+                }
+            }
+
+            // move on
+            int usable = kit & crossingMasks[terrain];
+            if (usable != 0) {
+                int used = (usable & primaryBits[terrain]) != 0 ? primaryBits[terrain] : usable;
+                if (used == Item.SWORD.getBit()) {
+                    value = arrivalValues[row];
+                } else {
+                    value = (1 - breakChance) * arrivalValues[row] + breakChance * arrivalValues[row(treasures, kit & ~used, gold)];
+                }
+                if (value > best) {
+                    best = value;
+                    bestAction = MOVE;
+                }
+            }
+
+            // buy or sell
+            for (int i = 0; i < shopItems; i++) {
+                int bit = 1 << i;
+                if ((kit & bit) == 0) {
+                    if (gold >= buyCosts[i]) {
+                        value = values[row(treasures, kit | bit, gold - buyCosts[i]) * TOWN_STATES + town];
+                        if (value > best) {
+                            best = value;
+                            bestAction = BUY + i;
+                        }
+                    }
+                } else if (sellPrices[i] > 0) {
+                    value = values[row(treasures, kit & ~bit, Math.min(gold + sellPrices[i], goldCap)) * TOWN_STATES + town];
+                    if (value > best) {
+                        best = value;
+                        bestAction = SELL + i;
+                    }
+                }
+            }
+
+            nextValues[state] = best;
+            actions[state] = (byte) bestAction;
+            change = Math.max(change, Math.abs(best - stay));
+        }
+        return change;
+    }
+
+    /**
+     * @return the value of the same town after the hunter's gold changes, which is 0 if they go broke.
+     */
+    private double goldValue(int row, int gold, int change, int town) {
+        int newGold = gold + change;
+        if (newGold < 0) {
+            return 0;
+        }
+        if (newGold > goldCap) {
+            newGold = goldCap;
+        }
+        return values[(row + newGold - gold) * TOWN_STATES + town];
+    }
+
+    private int row(int treasures, int kit, int gold) {
+        return (treasures * kits + kit) * golds + gold;
+    }
+
+    private int index(int gold, int kit, int collection, int terrain, boolean tough, boolean searched, boolean dug) {
+        int town = terrain * 8 + (tough ? 4 : 0) + (searched ? 2 : 0) + (dug ? 1 : 0);
+        return row(collection >>> TREASURE_SHIFT, kit, Math.min(gold, goldCap)) * TOWN_STATES + town;
+    }
+
+    /**
+     * A range of rows, which either sweeps them itself or splits them in two.
+     */
+    private class Sweep extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+
+        private Sweep(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Double compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                double change = 0;
+                for (int row = from; row < to; row++) {
+                    change = Math.max(change, sweepRow(row));
+                }
+                return change;
+            }
+            int middle = (from + to) >>> 1;
+            Sweep right = new Sweep(middle, to);
+            right.fork();
+            double change = new Sweep(from, middle).compute();
+            return Math.max(change, right.join());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * The SolverPolicy plays the way the Solver worked out is best.<p>
+ * Every turn it looks the hunter and the town up in the solver and takes the best action; when that is
+ * buying or selling it remembers the item for the shop. Playing it out in the real game shows how close the
+ * solver's model comes to the game, since the solver caps gold and never expects a town to be visited twice.
+ */
+
+public class SolverPolicy implements Policy {
+    // instance variables
+    private Solver solver;
+    private int maxTurns;
+    private String shopItem;
+
+    /**
+     * Creates a policy that plays a solved mode.
+     *
+     * @param solver A solver that has been solved.
+     * @param maxTurns The number of turns after which the policy gives up.
+     */
+    public SolverPolicy(Solver solver, int maxTurns) {
+        this.solver = solver;
+        this.maxTurns = maxTurns;
+    }
+
+    public String chooseName() {
+        return "solver";
+    }
+
+    public String chooseMode() {
+        return solver.getMode();
+    }
+
+    public String chooseAction(TreasureHunter game) {
+        if (game.getTurns() >= maxTurns) {
+            return "x";
+        }
+        int action = solver.getBestAction(game.getHunter(), game.getCurrentTown());
+        if (action >= Solver.SELL) {
+            shopItem = Item.fromOrdinal(action - Solver.SELL).getName();
+        } else if (action >= Solver.BUY) {
+            shopItem = Item.fromOrdinal(action - Solver.BUY).getName();
+        }
+        return Solver.describeAction(action).substring(0, 1);
+    }
+
+    public String chooseShopItem(Hunter hunter, boolean isBuying) {
+        return shopItem;
+    }
+
+    public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+        return "y";
+    }
+}
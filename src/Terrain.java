@@ -1,24 +1,49 @@
 /**
  * The Terrain class is designed to represent the zones between the towns in the Treasure Hunter game.
- * This code has been adapted from Ivan Turner's original program -- thank you, Mr. Turner!
+ * This code has been adapted from Ivan Turner's original program -- thank you, Mr. Turner!<p>
+ * Terrains are immutable, so every town shares one of the constants below instead of creating its own.
+ * Each terrain keeps a mask of the Item bits that let a hunter cross it.
  */
 
 public class Terrain {
+    // constants
+    public static final Terrain MOUNTAINS = new Terrain("Mountains", "Rope", null);
+    public static final Terrain OCEAN = new Terrain("Ocean", "Boat", null);
+    public static final Terrain PLAINS = new Terrain("Plains", "Horse", null);
+    public static final Terrain DESERT = new Terrain("Desert", "Water", null);
+    public static final Terrain JUNGLE = new Terrain("Jungle", "Machete", "sword");
+    public static final Terrain MARSH = new Terrain("Marsh", "Boots", null);
+
     // instance variables
-    private String terrainName;
-    private String neededItem;
-    private String secondaryNeededItem;
+    private final String terrainName;
+    private final String neededItem;
+    private final String secondaryNeededItem;
+    private final Item primaryItem;
+    private final Item secondaryItem;
+    private final int crossingMask;
 
     /**
      * Sets the class member variables
      *
      * @param name The name of the zone.
      * @param item The item needed in order to cross the zone.
+     * @param secondaryItem Another item that can be used instead, or null.
      */
     public Terrain(String name, String item, String secondaryItem) {
         terrainName = name;
         neededItem = item.toLowerCase();
         secondaryNeededItem = secondaryItem;
+        primaryItem = Item.fromName(neededItem);
+        this.secondaryItem = Item.fromName(secondaryItem);
+
+        int mask = 0;
+        if (primaryItem != null) {
+            mask |= primaryItem.getBit();
+        }
+        if (this.secondaryItem != null) {
+            mask |= this.secondaryItem.getBit();
+        }
+        crossingMask = mask;
     }
 
     // accessors
@@ -34,6 +59,13 @@ public class Terrain {
         return secondaryNeededItem;
     }
 
+    /**
+     * @return the Item bits of every item that can be used to cross.
+     */
+    public int getCrossingMask() {
+        return crossingMask;
+    }
+
     /**
      * Guards against a hunter crossing the zone without the proper item.
      * Searches the hunter's inventory for the proper item and determines whether the hunter can cross.
@@ -42,10 +74,25 @@ public class Terrain {
      * @return true if the Hunter has the proper item.
      */
     public boolean canCrossTerrain(Hunter hunter) {
-        if (hunter.hasItemInContainer(neededItem, hunter.getKit()) || (hunter.hasItemInContainer(secondaryNeededItem, hunter.getKit()) && secondaryNeededItem != null)) {
-            return true;
+        return (hunter.getKitMask() & crossingMask) != 0;
+    }
+
+    /**
+     * Works out which item the hunter would use to cross.
+     * The needed item is used if the hunter has it, otherwise the secondary item.
+     *
+     * @param hunter The Hunter object trying to cross the terrain.
+     * @return the item used, or null if the hunter can't cross.
+     */
+    public Item getCrossingItem(Hunter hunter) {
+        int usable = hunter.getKitMask() & crossingMask;
+        if (usable == 0) {
+            return null;
+        }
+        if (primaryItem != null && (usable & primaryItem.getBit()) != 0) {
+            return primaryItem;
         }
-        return false;
+        return secondaryItem;
     }
 
     /**
@@ -57,4 +104,4 @@ public class Terrain {
         }
         return terrainName + " needs a(n) " + neededItem + " to cross.";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a hunter trying to leave town across its terrain (Town.leaveTown).
+ */
+
+@Name("treasurehunter.TerrainCrossing")
+@Label("Terrain Crossing")
+@Category("Treasure Hunter")
+@Description("A hunter tries to cross the terrain around a town")
+public class TerrainCrossingEvent extends jdk.jfr.Event {
+    @Label("Hunter")
+    String hunter;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Gold")
+    int gold;
+
+    @Label("Item")
+    @Description("The item used to cross, if any")
+    String item;
+
+    @Label("Terrain")
+    String terrain;
+
+    @Label("Crossed")
+    boolean crossed;
+
+    @Label("Item Broke")
+    boolean itemBroke;
+}
@@ -1,7 +1,15 @@
 /**
  * The Town Class is where it all happens.
  * The Town is designed to manage all the things a Hunter can do in town.
- * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!
+ * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!<p>
+ * After each action the Town records the outcome as a TownEvent with the gold and item involved.
+ * The news text is only written when getLatestNews() is called, so nothing is allocated when nobody reads it.<p>
+ * A town also keeps the treasure hidden in it and whether the hunter has already searched and dug there,
+ * so a hunter who comes back finds it as they left it.<p>
+ * Every random event in town is picked from one of the rules' outcome tables with a single roll.<p>
+ * Leaving town and looking for trouble are published as GameEvents on the hunter's EventRing, if they have one.<p>
+ * In a SharedWorld the town's treasure, gold and brawlers belong to a SharedTown that other hunters can claim
+ * first; this Town is then the hunter's own view of it, with their own news and the stories of the others.
  */
 
 public class Town {
@@ -9,35 +17,125 @@ public class Town {
     private Hunter hunter;
     private Shop shop;
     private Terrain terrain;
+    private TownEvent news;
+    private int newsGold;
+    private int newsGoldDelta;
+    private Item newsItem;
+    private boolean newsItemBroke;
+    private int newsCount;
     private String printMessage;
     private boolean toughTown;
+    private Item treasure;
+    private boolean searched;
+    private boolean dug;
     private String mode;
+    private Rules rules;
+    private GameRandom random;
+    private SharedTown shared;
+    private long storiesRead;
+    private int author; // the game's number on the shared world, which its stories are posted under
 
     /**
      * The Town Constructor takes in a shop and the surrounding terrain, but leaves the hunter as null until one arrives.
      *
      * @param shop The town's shoppe.
      * @param toughness The surrounding terrain.
+     * @param random Where the town's random rolls come from.
      */
-    public Town(Shop shop, double toughness, String mode) {
+    public Town(Shop shop, double toughness, String mode, GameRandom random) {
+        this(shop, toughness, mode, Rules.forMode(mode), random, random);
+    }
+
+    /**
+     * Creates a town whose terrain, toughness and treasure come from their own random numbers.<p>
+     * The World uses this to build the same town every time from the town's id, while the brawls and
+     * broken items still use the game's random numbers.
+     *
+     * @param shop The town's shoppe.
+     * @param rules The rules for the game's mode.
+     * @param layout Where the terrain, toughness and treasure are rolled from.
+     * @param random Where the town's random rolls come from.
+     */
+    public Town(Shop shop, Rules rules, String mode, GameRandom layout, GameRandom random) {
+        this(shop, rules.getToughness(), mode, rules, layout, random);
+    }
+
+    private Town(Shop shop, double toughness, String mode, Rules rules, GameRandom layout, GameRandom random) {
         this.shop = shop;
-        this.terrain = getNewTerrain();
+        this.random = random;
+        this.rules = rules;
         this.mode = mode;
 
         // the hunter gets set using the hunterArrives method, which
         // gets called from a client class
         hunter = null;
 
+        news = null;
         printMessage = "";
 
+        // the terrain, toughness and treasure all come from one roll;
         // higher toughness = more likely to be a tough town
-        toughTown = (Math.random() < toughness);
+        int layoutOutcome = rules.getTownTable(toughness).sample(layout);
+        terrain = rules.getTerrain(Rules.getTownTerrain(layoutOutcome));
+        toughTown = Rules.isTownTough(layoutOutcome);
+        treasure = rules.getTreasure(Rules.getTownTreasure(layoutOutcome));
     }
 
+    /**
+     * Returns the news of the last thing that happened in town, writing it out the first time it is asked for.
+     *
+     * @return the news, ready to print.
+     */
     public String getLatestNews() {
+        if (printMessage == null) {
+            printMessage = renderNews();
+        }
         return printMessage;
     }
 
+    /**
+     * @return the number of things that have happened in town, so a caller can tell when there is new news.
+     */
+    public int getNewsCount() {
+        return newsCount;
+    }
+
+    //Accessors
+    /**
+     * @return the town's shop.
+     */
+    public Shop getShop() {
+        return shop;
+    }
+
+    /**
+     * @return the outcome of the last thing that happened in town, or null if nothing has yet.
+     */
+    public TownEvent getLatestEvent() {
+        return news;
+    }
+
+    /**
+     * @return how much the hunter's gold changed because of the last event.
+     */
+    public int getLatestGoldDelta() {
+        return newsGoldDelta;
+    }
+
+    /**
+     * @return the item used to cross the terrain in the last event, or null.
+     */
+    public Item getLatestItem() {
+        return newsItem;
+    }
+
+    /**
+     * @return true if the item used in the last event broke.
+     */
+    public boolean isLatestItemBroken() {
+        return newsItemBroke;
+    }
+
     /**
      * Assigns an object to the Hunter in town.
      *
@@ -45,13 +143,101 @@ public class Town {
      */
     public void hunterArrives(Hunter hunter) {
         this.hunter = hunter;
-        printMessage = "Welcome to town, " + hunter.getHunterName() + ".";
+        report(TownEvent.WELCOME, 0, 0);
+        if (shared != null) {
+            storiesRead = shared.getPosted();
+            shared.post(author, hunter.getHunterName() + " rode into town.");
+        }
+    }
 
-        if (toughTown) {
-            printMessage += "\nIt's pretty rough around here, so watch yourself.";
-        } else {
-            printMessage += "\nWe're just a sleepy little town with mild mannered folk.";
+    /**
+     * Makes the town's treasure, gold and brawlers the ones every hunter in a SharedWorld contends for.
+     *
+     * @param shared The shared part of the town, or null for a town of the hunter's own.
+     * @param author The game's number on the shared world, from SharedWorld.join().
+     */
+    public void share(SharedTown shared, int author) {
+        this.shared = shared;
+        this.author = author;
+    }
+
+    /**
+     * @return the hunter's place in the shared town's news: the number of the first story they haven't read.
+     */
+    public long getStoriesRead() {
+        return storiesRead;
+    }
+
+    /**
+     * Puts the hunter back at their place in the shared town's news, as when a saved game is restored.
+     *
+     * @param storiesRead The number of the first story they hadn't read.
+     */
+    public void setStoriesRead(long storiesRead) {
+        this.storiesRead = storiesRead;
+    }
+
+    /**
+     * @return the shared part of the town, or null if the town is the hunter's own.
+     */
+    public SharedTown getShared() {
+        return shared;
+    }
+
+    /**
+     * Takes the town's treasure for the hunter, unless another hunter got to it first.
+     *
+     * @return true if the treasure was still there.
+     */
+    public boolean claimTreasure() {
+        if (shared == null) {
+            return true;
         }
+        boolean claimed = shared.claimTreasure();
+        if (claimed) {
+            shared.post(author, hunter.getHunterName() + " searched the town and found the " + treasure + ".");
+        }
+        return claimed;
+    }
+
+    /**
+     * Claims the gold under the town for the hunter, unless another hunter dug it up first.
+     *
+     * @return true if the gold was still there.
+     */
+    public boolean claimDig() {
+        if (shared == null) {
+            return true;
+        }
+        boolean claimed = shared.claimDig();
+        if (claimed) {
+            shared.post(author, hunter.getHunterName() + " dug for gold under the town.");
+        }
+        return claimed;
+    }
+
+    /**
+     * Reads what the other hunters in town have been up to since the hunter last asked.
+     *
+     * @return their stories, one per line, or null if there are none or the town isn't shared.
+     */
+    public String readStories() {
+        if (shared == null) {
+            return null;
+        }
+        StringBuilder stories = new StringBuilder();
+        storiesRead = shared.readNews(author, storiesRead, stories);
+        return stories.isEmpty() ? null : stories.toString();
+    }
+
+    /**
+     * Puts a hunter back in town when a paused or restored game carries on. Unlike hunterArrives, nothing
+     * happens in town, so the news is left as it was.
+     *
+     * @param hunter The returning Hunter.
+     */
+    public void hunterReturns(Hunter hunter) {
+        this.hunter = hunter;
     }
 
     /**
@@ -60,31 +246,42 @@ public class Town {
      * @return true if the Hunter was able to leave town.
      */
     public boolean leaveTown() {
-        boolean canLeaveTown = terrain.canCrossTerrain(hunter);
-        if (canLeaveTown) {
-            String item;
-            if (hunter.hasItemInContainer(terrain.getNeededItem(), hunter.getKit())) {
-                item = terrain.getNeededItem();
-            } else {
-                item = terrain.getSecondaryNeededItem();
-            }
-            printMessage = "You used your " + item + " to cross the " + Colors.CYAN + terrain.getTerrainName() + Colors.RESET + ".";
-            if (checkItemBreak()) {
-                if (!mode.equals("e") && !item.equals("sword")) {
-                    hunter.removeItemFromContainer(item, hunter.getKit());
-                    printMessage += "\nUnfortunately, you lost your " + item + ".";
+        TerrainCrossingEvent event = new TerrainCrossingEvent();
+        event.begin();
+        Item item = terrain.getCrossingItem(hunter);
+        boolean crossed = item != null;
+        if (crossed) {
+            report(TownEvent.CROSSED_TERRAIN, 0, 0);
+            newsItem = item;
+            // the sword never breaks, and in easy mode the rules make sure nothing else does either
+            if (checkItemBreak() && item != Item.SWORD) {
+                hunter.removeItem(item);
+                newsItemBroke = true;
+                GameMetrics metrics = GameMetrics.current();
+                if (metrics != null) {
+                    metrics.recordItemBreak();
                 }
             }
-
-            return true;
+        } else {
+            report(TownEvent.CANT_LEAVE, 0, 0);
+        }
+        EventRing events = hunter.getEvents();
+        if (events != null) {
+            events.publish(GameEvent.LEFT_TOWN.pack(item, news.ordinal() | (newsItemBroke ? GameEvent.ITEM_BROKE : 0), 0));
         }
 
-        if (terrain.getSecondaryNeededItem() != null) {
-            printMessage = "You can't leave town, " + hunter.getHunterName() + ". You don't have a " + Colors.CYAN + terrain.getNeededItem() + " or a " + terrain.getSecondaryNeededItem() + Colors.CYAN + ".";
-        } else {
-            printMessage = "You can't leave town, " + hunter.getHunterName() + ". You don't have a " + Colors.CYAN + terrain.getNeededItem() + Colors.CYAN + ".";
+        event.end();
+        if (event.shouldCommit()) {
+            event.hunter = hunter.getHunterName();
+            event.mode = mode;
+            event.gold = hunter.getGold();
+            event.item = crossed ? item.getName() : null;
+            event.terrain = terrain.getTerrainName();
+            event.crossed = crossed;
+            event.itemBroke = newsItemBroke;
+            event.commit();
         }
-        return false;
+        return crossed;
     }
 
     /**
@@ -94,7 +291,7 @@ public class Town {
      */
     public void enterShop(String choice) {
         shop.enter(hunter, choice);
-        printMessage = "You left the shop.";
+        report(TownEvent.LEFT_SHOP, 0, 0);
     }
 
     /**
@@ -103,67 +300,122 @@ public class Town {
      * The tougher the town, the easier it is to find a fight, and the harder it is to win one.
      */
     public void lookForTrouble() {
-        double noTroubleChance;
-        if (toughTown) {
-            if (mode.equals("e")) {
-                noTroubleChance = .4;
-            } else {
-                noTroubleChance = 0.66;
-            }
+        boolean hasSword = mode.equals("s") && hunter.hasItem(Item.SWORD);
+        int outcome = rules.getBrawlTable(toughTown, hasSword).sample(random);
 
+        if (outcome == Rules.NO_TROUBLE) {
+            report(TownEvent.NO_TROUBLE, 0, 0);
+        } else if (shared != null && !shared.claimBrawler()) {
+            // every brawler in town is already fighting somebody, or has been run out of town
+            report(TownEvent.BRAWLERS_GONE, 0, 0);
         } else {
-            if (mode.equals("e")) {
-                noTroubleChance = .15;
-            } else {
-                noTroubleChance = 0.33;
-            }
-        }
-
-        if (Math.random() > noTroubleChance) {
-            printMessage = "You couldn't find any trouble";
-        } else {
-            printMessage = "You want trouble, stranger!" + Colors.RED + " You got it!\nOof! Umph! Ow!\n";
-            int goldDiff = (int) (Math.random() * 10) + 1;
-            if (mode.equals("s") && hunter.hasItemInContainer("sword", hunter.getKit())) {
-                noTroubleChance = 0.042;
-                double strikeBack = Math.random();
-                if (toughTown) {
-                    if (strikeBack < 0.09) {
-                        noTroubleChance = 1;
-                    }
-                } else {
-                    if (strikeBack < 0.06) {
-                        noTroubleChance = 1;
-                    }
-                }
+            BrawlEvent event = new BrawlEvent();
+            event.begin();
+            int goldDiff = Rules.getBrawlGold(outcome);
+            int kind = Rules.getBrawlKind(outcome);
+            boolean won = kind == Rules.KIND_WON;
+            GameMetrics metrics = GameMetrics.current();
+            if (metrics != null) {
+                metrics.recordBrawl(won);
             }
-            double playerStrike = Math.random();
-            if (playerStrike > noTroubleChance) {
-                if (mode.equals("s") && hunter.hasItemInContainer("sword", hunter.getKit())) {
-                    printMessage += Colors.GREEN + "Ahh, this stranger has a sword! This guy's for real!" + Colors.RESET + " Here, take my gold. I'm outta here!";
-                    printMessage += Colors.GREEN + "\nYou intimidated the brawler and receive " + Colors.YELLOW + goldDiff + Colors.GREEN + " gold. Nice going." + Colors.RESET;
-                } else {
-                    printMessage += "Okay, stranger! You proved yer mettle." + Colors.RESET + " Here, take my gold.";
-                    printMessage += "\nYou won the brawl and receive " + Colors.YELLOW + goldDiff + Colors.RESET + " gold.";
-                }
+            if (won) {
+                report(hasSword ? TownEvent.BRAWL_WON_WITH_SWORD : TownEvent.BRAWL_WON, goldDiff, goldDiff);
                 hunter.changeGold(goldDiff);
+                if (shared != null) {
+                    // the beaten brawler leaves town for good
+                    shared.post(author, hunter.getHunterName() + " beat a brawler and ran them out of town.");
+                }
             } else {
-                if (mode.equals("s") && hunter.hasItemInContainer("sword", hunter.getKit())) {
-                    printMessage += Colors.GREEN + "This stranger's got a sword! This guy's not playing fair!" + Colors.BLUE + " Freeze, don't move or I'll shoot! If you don't play fair I won't either. Now Pay Up!";
-                    if (playerStrike < 0.042) {
-                        printMessage += "\nYou fled the scene and they missed their gunshot and pay nothing." + Colors.RESET;
-                    } else {
-                        printMessage += "\nYou were held at gunpoint and pay " + Colors.YELLOW + goldDiff + Colors.GREEN + " gold. Just wow." + Colors.RESET;
-                    }
-                } else {
-                    printMessage += "That'll teach you to go lookin' fer trouble in MY town! Now pay up!" + Colors.RESET;
-                    printMessage += "\nYou lost the brawl and pay " + Colors.YELLOW + goldDiff + Colors.RESET + " gold.";
+                if (shared != null) {
+                    shared.releaseBrawler();
                 }
-                if (playerStrike >= 0.042) {
-                    hunter.changeGold(-goldDiff);
+                int goldDelta = 0;
+                if (kind == Rules.KIND_PAID) {
+                    goldDelta = -goldDiff;
+                    hunter.changeGold(goldDelta);
                 }
+                if (!hasSword) {
+                    report(TownEvent.BRAWL_LOST, goldDiff, goldDelta);
+                } else if (kind == Rules.KIND_UNPAID) {
+                    report(TownEvent.BRAWL_FLED, goldDiff, goldDelta);
+                } else {
+                    report(TownEvent.BRAWL_LOST_WITH_SWORD, goldDiff, goldDelta);
+                }
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.hunter = hunter.getHunterName();
+                event.mode = mode;
+                event.gold = hunter.getGold();
+                event.item = hasSword ? Item.SWORD.getName() : null;
+                event.won = won;
+                event.goldDelta = newsGoldDelta;
+                event.toughTown = toughTown;
+                event.commit();
             }
         }
+        EventRing events = hunter.getEvents();
+        if (events != null) {
+            Item sword = hasSword ? Item.SWORD : null;
+            events.publish(GameEvent.TROUBLE.pack(sword, news.ordinal() | (toughTown ? GameEvent.TOUGH_TOWN : 0), newsGoldDelta));
+        }
+    }
+
+    /**
+     * @return the terrain surrounding the town.
+     */
+    public Terrain getTerrain() {
+        return terrain;
+    }
+
+    /**
+     * @return true if this is a tough town.
+     */
+    public boolean isToughTown() {
+        return toughTown;
+    }
+
+    /**
+     * @return the rules the town was built with.
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the treasure hidden in this town.
+     */
+    public Item getTreasure() {
+        return treasure;
+    }
+
+    /**
+     * @return true if the hunter has already searched this town.
+     */
+    public boolean isSearched() {
+        return searched;
+    }
+
+    /**
+     * @return true if the hunter has already dug for gold in this town.
+     */
+    public boolean isDug() {
+        return dug;
+    }
+
+    /**
+     * Marks the town as searched, so its treasure can't be found again.
+     */
+    public void markSearched() {
+        searched = true;
+    }
+
+    /**
+     * Marks the town as dug, so there is no more gold to dig up.
+     */
+    public void markDug() {
+        dug = true;
     }
 
     public String toString() {
@@ -172,34 +424,76 @@ public class Town {
     }
 
     /**
-     * Determines the surrounding terrain for a town, and the item needed in order to cross that terrain.
+     * Determines whether a used item has broken.
+     *
+     * @return true if the roll says the item broke; the caller decides whether it is lost.
+     */
+    private boolean checkItemBreak() {
+        return rules.getBreakTable().sample(random) == 1;
+    }
+
+    /**
+     * Records the outcome of an action, throwing away the news of the last one.
      *
-     * @return A Terrain object.
-     */
-    private Terrain getNewTerrain() {
-        double rnd = Math.random() * 2;
-        if (rnd < .33) {
-            return new Terrain("Mountains", "Rope", null);
-        } else if (rnd < .66) {
-            return new Terrain("Ocean", "Boat", null);
-        } else if (rnd < .99) {
-            return new Terrain("Plains", "Horse", null);
-        } else if (rnd < 1.33) {
-            return new Terrain("Desert", "Water", null);
-        } else if (rnd < 1.66) {
-            return new Terrain("Jungle", "Machete", "sword");
-        } else {
-            return new Terrain("Marsh", "Boots", null);
-        }
+     * @param event What happened.
+     * @param gold The gold mentioned in the news.
+     * @param goldDelta How much the hunter's gold actually changed.
+     */
+    private void report(TownEvent event, int gold, int goldDelta) {
+        news = event;
+        newsGold = gold;
+        newsGoldDelta = goldDelta;
+        newsItem = null;
+        newsItemBroke = false;
+        printMessage = null;
+        newsCount++;
     }
 
     /**
-     * Determines whether a used item has broken.
+     * Writes out the news of the last event.
      *
-     * @return true if the item broke.
+     * @return the news, ready to print.
      */
-    private boolean checkItemBreak() {
-        double rand = Math.random();
-        return (rand < 0.5);
+    private String renderNews() {
+        if (news == null) {
+            return "";
+        }
+        String brawl = "You want trouble, stranger!" + Colors.RED + " You got it!\nOof! Umph! Ow!\n";
+        String swordDrawn = Colors.GREEN + "This stranger's got a sword! This guy's not playing fair!" + Colors.BLUE + " Freeze, don't move or I'll shoot! If you don't play fair I won't either. Now Pay Up!";
+        return switch (news) {
+            case WELCOME -> {
+                String message = "Welcome to town, " + hunter.getHunterName() + ".";
+                if (toughTown) {
+                    message += "\nIt's pretty rough around here, so watch yourself.";
+                } else {
+                    message += "\nWe're just a sleepy little town with mild mannered folk.";
+                }
+                yield message;
+            }
+            case LEFT_SHOP -> "You left the shop.";
+            case CROSSED_TERRAIN -> {
+                String message = "You used your " + newsItem + " to cross the " + Colors.CYAN + terrain.getTerrainName() + Colors.RESET + ".";
+                if (newsItemBroke) {
+                    message += "\nUnfortunately, you lost your " + newsItem + ".";
+                }
+                yield message;
+            }
+            case CANT_LEAVE -> {
+                if (terrain.getSecondaryNeededItem() != null) {
+                    yield "You can't leave town, " + hunter.getHunterName() + ". You don't have a " + Colors.CYAN + terrain.getNeededItem() + " or a " + terrain.getSecondaryNeededItem() + Colors.CYAN + ".";
+                }
+                yield "You can't leave town, " + hunter.getHunterName() + ". You don't have a " + Colors.CYAN + terrain.getNeededItem() + Colors.CYAN + ".";
+            }
+            case NO_TROUBLE -> "You couldn't find any trouble";
+            case BRAWLERS_GONE -> "Every brawler in town is busy or has been run out of town. You couldn't find any trouble";
+            case BRAWL_WON_WITH_SWORD -> brawl + Colors.GREEN + "Ahh, this stranger has a sword! This guy's for real!" + Colors.RESET + " Here, take my gold. I'm outta here!"
+                    + Colors.GREEN + "\nYou intimidated the brawler and receive " + Colors.YELLOW + newsGold + Colors.GREEN + " gold. Nice going." + Colors.RESET;
+            case BRAWL_WON -> brawl + "Okay, stranger! You proved yer mettle." + Colors.RESET + " Here, take my gold."
+                    + "\nYou won the brawl and receive " + Colors.YELLOW + newsGold + Colors.RESET + " gold.";
+            case BRAWL_FLED -> brawl + swordDrawn + "\nYou fled the scene and they missed their gunshot and pay nothing." + Colors.RESET;
+            case BRAWL_LOST_WITH_SWORD -> brawl + swordDrawn + "\nYou were held at gunpoint and pay " + Colors.YELLOW + newsGold + Colors.GREEN + " gold. Just wow." + Colors.RESET;
+            case BRAWL_LOST -> brawl + "That'll teach you to go lookin' fer trouble in MY town! Now pay up!" + Colors.RESET
+                    + "\nYou lost the brawl and pay " + Colors.YELLOW + newsGold + Colors.RESET + " gold.";
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a hunter arriving in a new town (TreasureHunter.enterTown).
+ */
+
+@Name("treasurehunter.TownEntry")
+@Label("Town Entry")
+@Category("Treasure Hunter")
+@Description("A hunter arrives in a new town")
+public class TownEntryEvent extends jdk.jfr.Event {
+    @Label("Hunter")
+    String hunter;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Gold")
+    int gold;
+
+    @Label("Town")
+    @Description("The town's number in the world")
+    int town;
+
+    @Label("Terrain")
+    String terrain;
+
+    @Label("Tough Town")
+    boolean toughTown;
+}
@@ -0,0 +1,19 @@
+/**
+ * The TownEvent enum lists the outcomes a Town can report after the hunter does something.<p>
+ * The Town only records which event happened (plus the gold and item involved);
+ * the news text is written out from it when somebody asks for it.
+ */
+
+public enum TownEvent {
+    WELCOME,
+    LEFT_SHOP,
+    CROSSED_TERRAIN,
+    CANT_LEAVE,
+    NO_TROUBLE,
+    BRAWL_WON,
+    BRAWL_WON_WITH_SWORD,
+    BRAWL_LOST,
+    BRAWL_LOST_WITH_SWORD,
+    BRAWL_FLED,
+    BRAWLERS_GONE
+}
@@ -1,110 +1,273 @@
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.Scanner;
 
 /**
  * This class is responsible for controlling the Treasure Hunter game.<p>
  * It handles the display of the menu and the processing of the player's choices.<p>
  * It handles all the display based on the messages it receives from the Town object. <p>
+ * If the game is given an EventBus, the hunter publishes to a ring of their own while the game is being played. <p>
+ * If the game is given a SharedWorld, it is played on the shared world's towns alongside every other game there. <p>
+ * A scripted game doesn't draw the menu every turn, only the town's news when something happens. <p>
  *
  * This code has been adapted from Ivan Turner's original program -- thank you, Mr. Turner!
  */
 
 public class TreasureHunter {
-    // static variables
-    private static final Scanner SCANNER = new Scanner(System.in);
-
     // instance variables
+    private Policy policy;
+    private PrintStream out;
+    private MenuRenderer renderer;
+    private Leaderboard leaderboard;
+    private EventBus eventBus;
+    private SharedWorld sharedWorld;
+    private GameRandom random;
+    private World world;
     private Town currentTown;
     private Hunter hunter;
-    private static final String[] treasures = {"crown", "trophy", "gem", "dust"};
-    private String treasure;
-    private boolean searchedTown;
-    private boolean dugTown;
     private String mode;
     private boolean win;
+    private boolean paused;
+    private boolean scripted;
+    private int turns;
 
     /**
-     * Constructs the Treasure Hunter game.
+     * Constructs the Treasure Hunter game, played by a person at the console.
      */
     public TreasureHunter() {
+        this(System.in, MenuRenderer.openConsole());
+    }
+
+    private TreasureHunter(InputStream in, PrintStream console) {
+        this(new ConsolePolicy(new Scanner(in), console), console, new GameRandom());
+    }
+
+    /**
+     * Constructs a Treasure Hunter game whose decisions come from a policy.
+     *
+     * @param policy Where every decision in the game comes from.
+     * @param out Where the game is printed, or null to play without printing anything.
+     * @param random Where every random roll in the game comes from.
+     */
+    public TreasureHunter(Policy policy, PrintStream out, GameRandom random) {
+        this.policy = policy;
+        this.out = out;
+        if (out != null) {
+            renderer = new MenuRenderer(out, false);
+        }
+        this.random = random;
         // these will be initialized in the play method
+        world = null;
         currentTown = null;
         hunter = null;
         mode = "n";
-        treasure = "";
         win = false;
     }
 
+    /**
+     * Switches the menu between plain output and ANSI output that only redraws the lines that changed.
+     *
+     * @param ansi Whether to use ANSI output.
+     */
+    public void setAnsi(boolean ansi) {
+        if (out != null) {
+            renderer = new MenuRenderer(out, ansi);
+        }
+    }
+
+    /**
+     * Plays the game from a script, such as a ScriptPolicy's, with nobody watching the menu.<p>
+     * Instead of a frame every turn only the town's news is printed, in plain output, when something new has
+     * happened, and the output is flushed when the game ends rather than before every move.
+     *
+     * @param scripted Whether the game is played from a script.
+     */
+    public void setScripted(boolean scripted) {
+        this.scripted = scripted;
+        if (out != null) {
+            renderer = new MenuRenderer(out, false);
+        }
+    }
+
+    /**
+     * Sets the leaderboard the game's result is recorded on when it ends.
+     *
+     * @param leaderboard The leaderboard, or null to keep no record.
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * Sets the bus the game's events are published on while it is being played.
+     *
+     * @param eventBus The bus, or null to publish nothing.
+     */
+    public void setEventBus(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * Sets the world the game is played on with other hunters, for a game that hasn't started or is paused.
+     *
+     * @param sharedWorld The shared world, or null to play on a world of the hunter's own.
+     */
+    public void setSharedWorld(SharedWorld sharedWorld) {
+        this.sharedWorld = sharedWorld;
+    }
+
     /**
      * Starts the game; this is the only public method
      */
     public void play() {
         welcomePlayer();
+        // the seed is rolled either way, so a shared world doesn't change the game's rolls after it
+        long seed = random.nextLong();
+        world = new World(sharedWorld != null ? sharedWorld.getSeed() : seed, mode, policy, out, random);
+        world.setShared(sharedWorld);
         enterTown();
         showMenu();
     }
 
+    /**
+     * Carries on a paused or restored game from the town the hunter is in. The hunter is put back in town
+     * without arriving again, so there is no welcome and no town entry event.
+     */
+    public void resume() {
+        paused = false;
+        world.setShared(sharedWorld);
+        openEvents();
+        currentTown = world.getCurrentTown();
+        currentTown.hunterReturns(hunter);
+        showMenu();
+    }
+
+    /**
+     * Puts a game back the way it was when a SessionSnapshot was saved, ready to resume().
+     *
+     * @param hunter The hunter, with their gold, kit and collection.
+     * @param mode The game mode.
+     * @param world The world, with the town the hunter is in and the towns being kept.
+     * @param turns The number of turns already played.
+     * @param win Whether the hunter had already won.
+     */
+    public void restore(Hunter hunter, String mode, World world, int turns, boolean win) {
+        this.hunter = hunter;
+        this.mode = mode;
+        this.world = world;
+        this.turns = turns;
+        this.win = win;
+        currentTown = world.getCurrentTown();
+        paused = true;
+    }
+
+    //Accessors
+    public Hunter getHunter() {
+        return hunter;
+    }
+
+    public Town getCurrentTown() {
+        return currentTown;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public GameRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * @return the number of menu choices processed so far.
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * @return true if the hunter has found all three treasures.
+     */
+    public boolean isWin() {
+        return win;
+    }
+
+    /**
+     * @return true if the policy paused the game, which can then be saved or resumed.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
     /**
      * Creates a hunter object at the beginning of the game and populates the class member variable with it.
      */
     private void welcomePlayer() {
-        System.out.println("Welcome to TREASURE HUNTER!");
-        System.out.println("Going hunting for the big treasure, eh?");
-        System.out.print("What's your name, Hunter? ");
-        String name = SCANNER.nextLine().toLowerCase();
+        if (out != null) {
+            out.println("Welcome to TREASURE HUNTER!");
+            out.println("Going hunting for the big treasure, eh?");
+            out.print("What's your name, Hunter? ");
+        }
+        String name = policy.chooseName();
+
+        if (out != null) {
+            out.print("Choose mode (e, n or h): ");
+        }
+        String mode = policy.chooseMode();
+        Rules rules = Rules.forMode(mode);
 
         // set hunter instance variable
-        hunter = new Hunter(name, 10);
+        hunter = new Hunter(name, rules.getStartingGold());
+        this.mode = mode;
+        openEvents();
 
-        System.out.print("Choose mode (e, n or h): ");
-        String mode = SCANNER.nextLine().toLowerCase();
         if (mode.equals("test")) {
             hunter.changeGold(90);
-            String[] items = {"water", "rope", "boots", "machete", "shovel", "horse", "boat"};
-            int[] costs = {2, 4, 6, 6, 8, 12, 20};
-            for (int i = 0; i < items.length; i++) {
-                hunter.changeGold(costs[i]);
-                hunter.buyItem(items[i], costs[i], mode);
+            Item[] items = {Item.WATER, Item.ROPE, Item.BOOTS, Item.MACHETE, Item.SHOVEL, Item.HORSE, Item.BOAT};
+            for (Item item : items) {
+                int cost = rules.getCost(item);
+                hunter.changeGold(cost);
+                hunter.buyItem(item, cost, mode);
             }
         }
-        this.mode = mode;
         hunter.setHunterMode(mode);
+        if (renderer != null && renderer.isAnsi()) {
+            // the first frame clears the screen, so the greeting is shown again above its prompt
+            renderer.message("Welcome to TREASURE HUNTER!\nGoing hunting for the big treasure, eh?");
+        }
     }
 
     /**
-     * Creates a new town and adds the Hunter to it.
+     * Adds the Hunter to the town the world has them in, when they first arrive there.
      */
     private void enterTown() {
-        double markdown = 0.5;
-        double toughness = 0.4;
-        if (mode.equals("h")) {
-            // in hard mode, you get less money back when you sell items
-            markdown = 0.25;
-
-            // and the town is "tougher"
-            toughness = 0.75;
-        }
-        if (mode.equals("e")) {
-            markdown = 1;
-            toughness = .2;
-        }
-        treasure = treasures[(int) (Math.random() * 4)];
-        searchedTown = false;
-        dugTown = false;
-        // note that we don't need to access the Shop object
-        // outside of this method, so it isn't necessary to store it as an instance
-        // variable; we can leave it as a local variable
-        Shop shop = new Shop(markdown, mode);
-
-        // creating the new Town -- which we need to store as an instance
-        // variable in this class, since we need to access the Town
-        // object in other methods of this class
-        currentTown = new Town(shop, toughness, mode);
+        TownEntryEvent event = new TownEntryEvent();
+        event.begin();
+
+        // the world keeps the towns, so a town the hunter comes back to
+        // still has its shop, its treasure and its searched and dug flags
+        currentTown = world.getCurrentTown();
 
         // calling the hunterArrives method, which takes the Hunter
         // as a parameter; note this also could have been done in the
         // constructor for Town, but this illustrates another way to associate
         // an object with an object of a different class
         currentTown.hunterArrives(hunter);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.hunter = hunter.getHunterName();
+            event.mode = mode;
+            event.gold = hunter.getGold();
+            event.town = world.getCurrentId();
+            event.terrain = currentTown.getTerrain().getTerrainName();
+            event.toughTown = currentTown.isToughTown();
+            event.commit();
+        }
     }
 
     /**
@@ -116,28 +279,52 @@ public class TreasureHunter {
         String choice = "";
 
         while (!choice.equals("x") && !hunter.isBroke() && !win) {
-            System.out.println();
-            System.out.println(currentTown.getLatestNews());
-            System.out.println("***");
-            System.out.println(hunter);
-            System.out.println(currentTown);
-            System.out.println("(B)uy something at the shop.");
-            System.out.println("(S)ell something at the shop.");
-            System.out.println("(M)ove on to a different town.");
-            System.out.println("(L)ook for trouble!");
-            System.out.println("(H)unt for treasure!");
-            System.out.println("(D)ig for gold!");
-            System.out.println("Give up the hunt and e(X)it.");
-            System.out.println();
-            System.out.print("What's your next move? ");
-            choice = SCANNER.nextLine().toLowerCase();
-            processChoice(choice);
+            String stories = currentTown.readStories();
+            if (stories != null) {
+                println(stories);
+            }
+            if (renderer != null && scripted) {
+                renderer.renderNews(currentTown);
+            } else if (renderer != null) {
+                renderer.render(hunter, currentTown);
+            }
+            choice = policy.chooseAction(this);
+            if (choice == null) {
+                // paused at the prompt; the game is left as it is, to be saved or resumed
+                paused = true;
+                closeEvents();
+                return;
+            }
+            GameMetrics metrics = GameMetrics.current();
+            if (metrics == null) {
+                processChoice(choice);
+            } else {
+                // the shop's questions wait on the player, so only the time spent acting is recorded
+                Shop shop = currentTown.getShop();
+                long start = System.nanoTime();
+                processChoice(choice);
+                long nanos = System.nanoTime() - start;
+                if (choice.equals("b") || choice.equals("s")) {
+                    nanos -= shop.getWaitNanos();
+                }
+                metrics.recordAction(choice, nanos);
+            }
+            turns++;
         }
         if (hunter.isBroke()) {
-            System.out.println(currentTown.getLatestNews());
-            System.out.println("Game Over! You can't pay your debt!");
+            if (renderer != null) {
+                renderer.message(currentTown.getLatestNews());
+            }
+            println("Game Over! You can't pay your debt!");
         } else if (win) {
-            System.out.println("Congratulations, you have found the last of the three treasures, you win!");
+            println("Congratulations, you have found the last of the three treasures, you win!");
+        }
+        if (leaderboard != null) {
+            leaderboard.add(this);
+        }
+        closeEvents();
+        if (renderer != null) {
+            renderer.finish();
         }
     }
 
@@ -147,52 +334,89 @@ public class TreasureHunter {
      */
     private void processChoice(String choice) {
         switch (choice) {
-            case "b", "s" -> currentTown.enterShop(choice);
+            case "b", "s" -> {
+                if (renderer != null) {
+                    // the shop prints its own questions, and hands its answers to the renderer
+                    renderer.invalidate();
+                }
+                currentTown.getShop().setRenderer(renderer);
+                currentTown.getShop().setScripted(scripted);
+                currentTown.enterShop(choice);
+            }
             case "m" -> {
                 if (currentTown.leaveTown()) {
-                    // This town is going away so print its news ahead of time.
-                    System.out.println(currentTown.getLatestNews());
+                    // The hunter is leaving this town so print its news ahead of time.
+                    if (renderer != null) {
+                        renderer.message(currentTown.getLatestNews());
+                    }
+                    world.travel();
                     enterTown();
                 }
             }
             case "l" -> currentTown.lookForTrouble();
             case "h" -> {
-                if (!searchedTown) {
-                    System.out.println("You found a " + treasure + "!");
-                    if (hunter.hasItemInContainer(treasure, hunter.getCollection())) {
-                        System.out.println("You already have this treasure!");
+                Item treasure = currentTown.getTreasure();
+                if (!currentTown.isSearched() && !currentTown.claimTreasure()) {
+                    println("Somebody has already searched this town and taken whatever was here.");
+                    currentTown.markSearched();
+                } else if (!currentTown.isSearched()) {
+                    println("You found a " + treasure + "!");
+                    if (hunter.hasTreasure(treasure)) {
+                        println("You already have this treasure!");
                     }
                     boolean added = hunter.addTreasure(treasure);
                     if (!added) {
-                        System.out.println("You did not add the " + treasure + ".");
-                        System.out.println("You want to keep your collection clean.");
+                        println("You did not add the " + treasure + ".");
+                        println("You want to keep your collection clean.");
                     } else {
                         win = determineWin();
                     }
-                    searchedTown = true;
+                    currentTown.markSearched();
                 } else {
-                    System.out.println("You have already searched this town!");
+                    println("You have already searched this town!");
                 }
             }
             case "d" -> {
-                if (hunter.hasItemInContainer("shovel", hunter.getKit()) && !dugTown) {
-                    int findGold = (int) (Math.random() * 2);
-                    if (findGold == 0) {
-                        int goldAmount = (int) (Math.random() * 20) + 1;
-                        System.out.println("You dug up " + goldAmount + " gold!");
+                if (hunter.hasItem(Item.SHOVEL) && !currentTown.isDug() && !currentTown.claimDig()) {
+                    println("Somebody has already dug up all the gold in this town.");
+                    currentTown.markDug();
+                } else if (hunter.hasItem(Item.SHOVEL) && !currentTown.isDug()) {
+                    int goldAmount = currentTown.getRules().getDigTable().sample(random);
+                    if (goldAmount > 0) {
+                        println("You dug up " + goldAmount + " gold!");
                         hunter.changeGold(goldAmount);
                     } else {
-                        System.out.println("You dug but only found dirt");
+                        println("You dug but only found dirt");
                     }
-                    dugTown = true;
-                } else if (dugTown) {
-                    System.out.println("You already dug for gold in this town.");
+                    currentTown.markDug();
+                } else if (currentTown.isDug()) {
+                    println("You already dug for gold in this town.");
                 } else {
-                    System.out.println("You can't dig for gold without a shovel");
+                    println("You can't dig for gold without a shovel");
                 }
             }
-            case "x" -> System.out.println("Fare thee well, " + hunter.getHunterName() + "!");
-            default -> System.out.println("Yikes! That's an invalid option! Try again.");
+            case "x" -> println("Fare thee well, " + hunter.getHunterName() + "!");
+            default -> println("Yikes! That's an invalid option! Try again.");
+        }
+    }
+
+    /**
+     * Opens a ring on the event bus for the hunter to publish to, if there is a bus and the hunter has no ring yet.
+     */
+    private void openEvents() {
+        if (eventBus != null && hunter.getEvents() == null) {
+            hunter.setEvents(eventBus.openRing(hunter.getHunterName(), mode));
+        }
+    }
+
+    /**
+     * Closes the hunter's ring, once the game is over or paused, so the bus can let it go.
+     */
+    private void closeEvents() {
+        EventRing events = hunter.getEvents();
+        if (events != null) {
+            events.close();
+            hunter.setEvents(null);
         }
     }
 
@@ -202,12 +426,17 @@ public class TreasureHunter {
      * @return whether the win condition is met or not
      */
     private boolean determineWin() {
-        String[] treasureCollection = hunter.getCollection();
-        for (String treasure : treasureCollection) {
-            if (treasure == null) {
-                return false;
-            }
+        return hunter.hasAllTreasures();
+    }
+
+    /**
+     * Prints a line for the player, unless the game is running without a console.
+     *
+     * @param message The line to print.
+     */
+    private void println(String message) {
+        if (renderer != null) {
+            renderer.message(message);
         }
-        return true;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,75 @@
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Scanner;
+
 public class TreasureHunterRunner {
-    public static void main(String[] args) {
-        TreasureHunter game = new TreasureHunter();
+    /**
+     * Usage: TreasureHunterRunner [--seed n] [--journal file] [--ansi] [--leaderboard file] [--script file]<p>
+     * A seed makes the world play out the same way every time, and a journal records
+     * the game so that JournalReplay can play it again. ANSI mode redraws only what changed on screen.
+     * With a leaderboard the game's result is recorded, and the best games of its mode are shown at the end.
+     * A script, or "-" for standard input, is played through a ScriptPolicy without drawing the menu.
+     */
+    public static void main(String[] args) throws IOException {
+        GameRandom seeds = new GameRandom();
+        long seed = seeds.nextLong();
+        String journalFile = null;
+        String leaderboardFile = null;
+        String scriptFile = null;
+        boolean ansi = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--journal") && i + 1 < args.length) {
+                journalFile = args[++i];
+            } else if (args[i].equals("--ansi")) {
+                ansi = true;
+            } else if (args[i].equals("--leaderboard") && i + 1 < args.length) {
+                leaderboardFile = args[++i];
+            } else if (args[i].equals("--script") && i + 1 < args.length) {
+                scriptFile = args[++i];
+            }
+        }
+
+        PrintStream console = MenuRenderer.openConsole();
+        Policy policy;
+        if (scriptFile == null) {
+            policy = new ConsolePolicy(new Scanner(System.in), console);
+        } else {
+            policy = new ScriptPolicy(scriptFile.equals("-") ? System.in : new FileInputStream(scriptFile));
+        }
+        JournalWriter journal = null;
+        if (journalFile != null) {
+            journal = new JournalWriter(policy, new BufferedOutputStream(new FileOutputStream(journalFile)), seed);
+            policy = journal;
+        }
+
+        TreasureHunter game = new TreasureHunter(policy, console, new GameRandom(seed));
+        game.setAnsi(ansi);
+        if (scriptFile != null) {
+            game.setScripted(true);
+        }
+        Leaderboard leaderboard = null;
+        if (leaderboardFile != null) {
+            leaderboard = new Leaderboard(Paths.get(leaderboardFile));
+            game.setLeaderboard(leaderboard);
+        }
         game.play();
+        if (journal != null) {
+            journal.close(game);
+        }
+        if (leaderboard != null) {
+            console.println("Best games in mode " + game.getMode() + ":");
+            int place = 1;
+            for (Leaderboard.Result result : leaderboard.getTop(game.getMode(), 5)) {
+                console.println(place++ + ". " + result);
+            }
+            console.flush();
+            leaderboard.close();
+        }
     }
-}
\ No newline at end of file
+}
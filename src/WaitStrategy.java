@@ -0,0 +1,130 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A WaitStrategy decides how a thread on the EventBus waits for something to change.<p>
+ * The bus's consumer threads wait with it when no session has published anything new, and a session waits
+ * with it when its EventRing is full and the consumers have to catch up. Spinning reacts fastest but keeps a
+ * core busy; sleeping and blocking give the core back at the cost of a little latency.
+ */
+
+public interface WaitStrategy {
+    /**
+     * Waits a little, after finding nothing had changed.
+     *
+     * @param attempts How many times in a row the caller has already waited for the same thing.
+     */
+    void idle(int attempts);
+
+    /**
+     * Wakes any threads waiting in idle(), after an event has been published or consumed.
+     */
+    default void signalAll() {
+    }
+
+    /**
+     * @return a strategy that spins on the core the whole time.
+     */
+    static WaitStrategy busySpin() {
+        return attempts -> Thread.onSpinWait();
+    }
+
+    /**
+     * @return a strategy that spins for a while, then yields the core to other threads.
+     */
+    static WaitStrategy yielding() {
+        return attempts -> {
+            if (attempts < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        };
+    }
+
+    /**
+     * @return a strategy that spins, then yields, then sleeps a tenth of a millisecond at a time.
+     */
+    static WaitStrategy sleeping() {
+        return attempts -> {
+            if (attempts < 100) {
+                Thread.onSpinWait();
+            } else if (attempts < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(100_000);
+            }
+        };
+    }
+
+    /**
+     * @return a strategy that spins briefly, then blocks until another thread signals it.
+     */
+    static WaitStrategy blocking() {
+        return new Blocking();
+    }
+
+    /**
+     * Looks a strategy up by name, for the command line.
+     *
+     * @param name busy, yield, sleep or block.
+     * @return a new strategy.
+     */
+    static WaitStrategy forName(String name) {
+        return switch (name) {
+            case "busy" -> busySpin();
+            case "yield" -> yielding();
+            case "sleep" -> sleeping();
+            case "block" -> blocking();
+            default -> throw new IllegalArgumentException("Unknown wait strategy " + name + "; try busy, yield, sleep or block");
+        };
+    }
+
+    /**
+     * Blocks on a condition once spinning hasn't helped.<p>
+     * Signalling only takes the lock when somebody is waiting, so a session publishing to a bus whose consumers
+     * are keeping up pays one volatile read. A signal that slips in just before a thread starts waiting is
+     * lost, so the wait times out after a millisecond and the thread looks again.
+     */
+    class Blocking implements WaitStrategy {
+        // constants
+        private static final int SPINS = 100;
+        private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(1);
+
+        // instance variables
+        private ReentrantLock lock = new ReentrantLock();
+        private Condition changed = lock.newCondition();
+        private AtomicInteger waiters = new AtomicInteger();
+
+        public void idle(int attempts) {
+            if (attempts < SPINS) {
+                Thread.onSpinWait();
+                return;
+            }
+            waiters.incrementAndGet();
+            lock.lock();
+            try {
+                changed.awaitNanos(TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+                waiters.decrementAndGet();
+            }
+        }
+
+        public void signalAll() {
+            if (waiters.get() > 0) {
+                lock.lock();
+                try {
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The World is the map of towns the hunter travels through.<p>
+ * Towns are numbered and laid out in a ring, with a road to the next and previous town and a long road
+ * across to the far side of the ring. Leaving a town over its terrain takes the hunter down one of those
+ * roads, so a hunter can find their way back to a town they have seen before.<p>
+ * A town is only built the first time the hunter reaches it, from the world's seed and the town's number,
+ * so the same town always has the same terrain, toughness and treasure. The most recently visited towns are
+ * kept, with their shop and whether they have been searched and dug; older towns are dropped and built again
+ * from scratch if the hunter returns, so a session's memory stays the same size however long the game runs.<p>
+ * A world built from the seed of a SharedWorld can share its towns' treasure, gold and brawlers with every other
+ * game on that world.
+ */
+
+public class World {
+    // constants
+    public static final int SIZE = 1 << 20;
+    public static final int ROADS = 3;
+    public static final int CACHE_SIZE = 16;
+
+    // instance variables
+    private long seed;
+    private String mode;
+    private Policy policy;
+    private PrintStream out;
+    private GameRandom random;
+    private LinkedHashMap<Integer, Town> towns;
+    private int currentId;
+    private SharedWorld shared;
+    private int author; // the game's number on the shared world, 0 until it has joined one
+
+    /**
+     * Creates a world with the hunter in the first town.
+     *
+     * @param seed The seed every town is built from.
+     * @param mode The game mode, which picks the rules the towns are built with.
+     * @param policy Where the shops' questions are answered.
+     * @param out Where the shops print, or null to play without printing anything.
+     * @param random Where the game's random rolls come from.
+     */
+    public World(long seed, String mode, Policy policy, PrintStream out, GameRandom random) {
+        this.seed = seed;
+        this.mode = mode;
+        this.policy = policy;
+        this.out = out;
+        this.random = random;
+
+        // an access ordered map drops the town visited longest ago once it is full
+        towns = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, Town> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        currentId = 0;
+    }
+
+    //Accessors
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getCurrentId() {
+        return currentId;
+    }
+
+    /**
+     * @return the town the hunter is in.
+     */
+    public Town getCurrentTown() {
+        return getTown(currentId);
+    }
+
+    /**
+     * @return how many towns are being kept.
+     */
+    public int getCachedTowns() {
+        return towns.size();
+    }
+
+    /**
+     * @return the numbers of the towns being kept, the one visited longest ago first.
+     */
+    public int[] getCachedIds() {
+        int[] ids = new int[towns.size()];
+        int i = 0;
+        for (int id : towns.keySet()) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Puts the hunter in a town without travelling there, as when a saved game is restored.
+     *
+     * @param id The number of the town.
+     */
+    public void setCurrentId(int id) {
+        currentId = id & (SIZE - 1);
+    }
+
+    /**
+     * @return the game's number on the shared world its stories are posted under, or 0 if it hasn't joined one.
+     */
+    public int getAuthor() {
+        return author;
+    }
+
+    /**
+     * Gives the game back the number it had on a shared world, as when a saved game is restored.
+     *
+     * @param author The number, or 0 if it hadn't joined one.
+     */
+    public void setAuthor(int author) {
+        this.author = author;
+    }
+
+    /**
+     * Shares the towns with every other game on a SharedWorld, including the towns already being kept.<p>
+     * Nothing is shared unless the world was built from the shared world's seed, as a game saved on another
+     * shared world would be. The game joins the shared world the first time, and keeps its number after that,
+     * so sharing again when a game is resumed doesn't make it somebody new.
+     *
+     * @param shared The shared world, or null to keep every town to this hunter.
+     */
+    public void setShared(SharedWorld shared) {
+        this.shared = shared != null && shared.getSeed() == seed ? shared : null;
+        if (this.shared != null) {
+            if (author == 0) {
+                author = this.shared.join();
+            } else {
+                this.shared.rejoin(author);
+            }
+        }
+        for (Map.Entry<Integer, Town> entry : towns.entrySet()) {
+            share(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Finds the town at the other end of one of a town's roads.
+     *
+     * @param id The town the road leaves from.
+     * @param road Which road, from 0 to ROADS - 1.
+     * @return the number of the town the road leads to.
+     */
+    public static int getNeighbor(int id, int road) {
+        return switch (road) {
+            case 0 -> (id + 1) & (SIZE - 1);
+            case 1 -> (id - 1) & (SIZE - 1);
+            default -> (id + SIZE / 2) & (SIZE - 1);
+        };
+    }
+
+    /**
+     * Takes the hunter down a random road out of the current town.
+     *
+     * @return the town at the end of the road.
+     */
+    public Town travel() {
+        int road = (int) (random.nextDouble() * ROADS);
+        currentId = getNeighbor(currentId, road);
+        return getTown(currentId);
+    }
+
+    /**
+     * Returns a town, building it if it isn't being kept.
+     *
+     * @param id The number of the town.
+     * @return the town.
+     */
+    public Town getTown(int id) {
+        Town town = towns.get(id);
+        if (town == null) {
+            town = newTown(id);
+            towns.put(id, town);
+        }
+        return town;
+    }
+
+    /**
+     * Builds a town from the world's seed and the town's number, with the rules currently in force.
+     *
+     * @param id The number of the town.
+     * @return a new town that nobody has searched or dug in.
+     */
+    private Town newTown(int id) {
+        Rules rules = Rules.forMode(mode);
+        GameRandom layout = new GameRandom(GameRandom.mix64(seed + id));
+        Shop shop = new Shop(rules, mode, policy, out, random);
+        Town town = new Town(shop, rules, mode, layout, random);
+        share(id, town);
+        return town;
+    }
+
+    private void share(int id, Town town) {
+        town.share(shared == null ? null : shared.getTown(mode, id, town.isToughTown()), author);
+    }
+}
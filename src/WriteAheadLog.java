@@ -0,0 +1,604 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * The WriteAheadLog keeps every game in progress on disk, so the sessions survive the server restarting.<p>
+ * Every session logs each decision its player makes (through a DurablePolicy) before the game acts on it. A
+ * game is played the same way every time from the seed of its GameRandom, so the seed and the decisions are
+ * all it takes to bring the hunter's gold, kit, collection and town back.<p>
+ * Sessions share one log file. A record is copied into a buffer under a lock and the session waits until it
+ * is on the disk; meanwhile one flusher thread takes everything that has been buffered since its last write,
+ * writes it in one go and forces it to the disk once. However many sessions were waiting, the whole batch
+ * costs one fsync, so the more players there are the more decisions each fsync covers.<p>
+ * Opening the log recovers it: the records are read once and grouped by session, the sessions that hadn't
+ * ended are replayed on all the cores at once, and the log is rewritten with one snapshot for each of them,
+ * so it only ever holds the games played since the last start. Recovery uses the rules in force when it runs.<p>
+ * A session can also log a snapshot of its game at the menu as a checkpoint; recovery starts from a session's
+ * latest snapshot and only replays the decisions after it. DurablePolicy does this after every visit to the
+ * shop and every search, dig and brawl, so a purchase made at a Market price never has to be priced again, and
+ * a town shared with other hunters never has to be searched again.<p>
+ * A record is its length (4 bytes), a CRC-32C of the rest (4), the session (8), the kind of record (1) and a
+ * payload: the seed for BEGIN, a SessionSnapshot for SNAPSHOT, the decision in UTF-8 for DECISION and nothing
+ * for END. Recovery stops at the first record that is cut short or doesn't match its CRC.<p>
+ * Usage: WriteAheadLog [file] [sessions] [turns] to time durable decisions from many sessions at once, then
+ * recover the unfinished games and check they came back as they were.
+ */
+
+public class WriteAheadLog implements AutoCloseable {
+    // constants
+    public static final byte BEGIN = 1;
+    public static final byte SNAPSHOT = 2;
+    public static final byte DECISION = 3;
+    public static final byte END = 4;
+    public static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAGIC = 0x54485731; // "THW1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER = 17; // length, CRC, session and kind
+
+    // instance variables
+    private Path file;
+    private FileChannel channel;
+    private List<Recovered> recovered;
+    private long nextSession;
+    private ReentrantLock lock;
+    private Condition pending; // the flusher waits on this for records to write
+    private Condition durable; // sessions wait on this for their records to reach the disk
+    private Condition space; // sessions wait on this for room in the buffer
+    private ByteBuffer filling;
+    private ByteBuffer writing;
+    private long appended; // the end of the last record buffered
+    private long forced; // the end of the last record on the disk
+    private long commits;
+    private long records;
+    private IOException failure;
+    private boolean open;
+    private Thread flusher;
+
+    /**
+     * Opens a log, recovering the games left in it and starting it again with just those games in it.
+     *
+     * @param file The log file; it is created if it doesn't exist.
+     * @throws IOException if the log can't be read or written.
+     */
+    public WriteAheadLog(Path file) throws IOException {
+        this.file = file;
+        Map<Long, List<byte[]>> sessions = read(file);
+        recovered = sessions.entrySet().parallelStream()
+                .map(session -> replay(session.getKey(), session.getValue()))
+                .filter(Objects::nonNull)
+                .toList();
+        nextSession = 1;
+        for (Long session : sessions.keySet()) {
+            nextSession = Math.max(nextSession, session + 1);
+        }
+
+        // the unfinished games start the new log, each as a single snapshot
+        Path fresh = file.resolveSibling(file.getFileName() + ".tmp");
+        channel = FileChannel.open(fresh, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        filling = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        filling.putInt(MAGIC).putInt(VERSION).putLong(0);
+        for (Recovered game : recovered) {
+            if (filling.remaining() < RECORD_HEADER + game.snapshot.length) {
+                write(filling);
+            }
+            putRecord(filling, game.session, SNAPSHOT, game.snapshot);
+        }
+        write(filling);
+        channel.force(true);
+        appended = channel.position();
+        forced = appended;
+        Files.move(fresh, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        lock = new ReentrantLock();
+        pending = lock.newCondition();
+        durable = lock.newCondition();
+        space = lock.newCondition();
+        open = true;
+        flusher = new Thread(this::flush, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    //Accessors
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the games that were in progress when the log was last closed or the JVM stopped, ready to resume.
+     */
+    public List<Recovered> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * @return the number of times the log has been forced to the disk.
+     */
+    public long getCommits() {
+        lock.lock();
+        try {
+            return commits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records logged since the log was opened.
+     */
+    public long getRecords() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts logging a new game.<p>
+     * The record isn't waited for; it reaches the disk with the game's first decision.
+     *
+     * @param seed The seed of the game's GameRandom, before anything has been rolled.
+     * @return the session number to log the game's decisions under.
+     */
+    public long begin(long seed) {
+        byte[] payload = ByteBuffer.allocate(Long.BYTES).putLong(seed).array();
+        lock.lock();
+        try {
+            long session = nextSession++;
+            append(session, BEGIN, payload);
+            return session;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs a decision and waits until it is on the disk.
+     *
+     * @param session The session the decision was made in.
+     * @param decision The decision.
+     */
+    public void commit(long session, String decision) {
+        byte[] payload = decision.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            awaitDurable(append(session, DECISION, payload));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs a snapshot of a game at the menu, which recovery starts from instead of the records before it,
+     * and waits until it is on the disk.<p>
+     * So once the player is shown the menu after a purchase, the purchase is recovered at the price that was
+     * charged. If the server stops after the hunter said yes but before the snapshot is on the disk, which is
+     * before the player has seen the outcome, the decisions are replayed instead and the purchase is made
+     * again at the rules' price.
+     *
+     * @param session The session.
+     * @param snapshot The game, saved by SessionSnapshot.
+     */
+    public void checkpoint(long session, byte[] snapshot) {
+        lock.lock();
+        try {
+            awaitDurable(append(session, SNAPSHOT, snapshot));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits, holding the lock, until the flusher has forced the log up to a point.
+     *
+     * @param end The end of the last record to wait for.
+     */
+    private void awaitDurable(long end) {
+        while (forced < end) {
+            checkFailure();
+            durable.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Logs the end of a game, so it isn't recovered; the record isn't waited for.
+     *
+     * @param session The session.
+     */
+    public void end(long session) {
+        lock.lock();
+        try {
+            append(session, END, new byte[0]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes out everything logged so far and closes the log.<p>
+     * The games that haven't ended are recovered the next time it is opened.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            open = false;
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies a record into the buffer; the lock has to be held.
+     *
+     * @return the position in the log just after the record.
+     */
+    private long append(long session, byte kind, byte[] payload) {
+        int size = RECORD_HEADER + payload.length;
+        if (size > BUFFER_SIZE) {
+            throw new IllegalArgumentException("A " + size + " byte record is too big for the log");
+        }
+        if (!open) {
+            throw new IllegalStateException("The log is closed");
+        }
+        while (filling.remaining() < size) {
+            checkFailure();
+            space.awaitUninterruptibly();
+        }
+        putRecord(filling, session, kind, payload);
+        appended += size;
+        records++;
+        pending.signal();
+        return appended;
+    }
+
+    /**
+     * Runs the flusher thread: waits for records, swaps the buffers, then writes and forces the batch with
+     * the lock let go, so sessions keep filling the other buffer in the meantime.
+     */
+    private void flush() {
+        while (true) {
+            long end;
+            lock.lock();
+            try {
+                while (filling.position() == 0 && open) {
+                    pending.awaitUninterruptibly();
+                }
+                if (filling.position() == 0) {
+                    return;
+                }
+                ByteBuffer full = filling;
+                filling = writing;
+                writing = full;
+                end = appended;
+                space.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                write(writing);
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    forced = end;
+                    commits++;
+                }
+                durable.signalAll();
+                space.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("The log can't be written", failure);
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, long session, byte kind, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer body = ByteBuffer.allocate(Long.BYTES + 1 + payload.length);
+        body.putLong(session).put(kind).put(payload);
+        crc.update(body.array());
+        buffer.putInt(body.capacity());
+        buffer.putInt((int) crc.getValue());
+        buffer.put(body.array());
+    }
+
+    /**
+     * Reads a log and groups its records by session, leaving out the sessions that ended.
+     *
+     * @param file The log file.
+     * @return each session's records from its latest snapshot or its beginning, the kind byte first.
+     */
+    private static Map<Long, List<byte[]>> read(Path file) throws IOException {
+        Map<Long, List<byte[]>> sessions = new LinkedHashMap<>();
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return sessions;
+        }
+        ByteBuffer log;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            log = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        if (log.remaining() < HEADER_SIZE || log.getInt() != MAGIC || log.getInt() != VERSION) {
+            throw new IOException(file + " is not a write-ahead log");
+        }
+        log.position(HEADER_SIZE);
+        CRC32C crc = new CRC32C();
+        while (log.remaining() >= Integer.BYTES * 2) {
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length <= Long.BYTES || length > log.remaining()) {
+                break; // the last batch was cut short
+            }
+            byte[] body = new byte[length];
+            log.get(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(body);
+            long session = record.getLong();
+            byte[] rest = new byte[length - Long.BYTES];
+            record.get(rest);
+            if (rest[0] == END) {
+                sessions.remove(session);
+            } else if (rest[0] == SNAPSHOT) {
+                // everything before a snapshot is already in it
+                List<byte[]> records = new ArrayList<>();
+                records.add(rest);
+                sessions.put(session, records);
+            } else {
+                sessions.computeIfAbsent(session, s -> new ArrayList<>()).add(rest);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Plays a session's records again, without printing anything, up to its last decision.
+     *
+     * @param session The session.
+     * @param records Its records, the kind byte first.
+     * @return the recovered game, or null if it hadn't got as far as the menu or had already finished.
+     */
+    private static Recovered replay(long session, List<byte[]> records) {
+        byte[] first = records.get(0);
+        ReplayPolicy policy = new ReplayPolicy(records);
+        TreasureHunter game;
+        try {
+            if (first[0] == BEGIN) {
+                long seed = ByteBuffer.wrap(first, 1, Long.BYTES).getLong();
+                game = new TreasureHunter(policy, null, new GameRandom(seed));
+                game.play();
+            } else if (first[0] == SNAPSHOT) {
+                ByteBuffer snapshot = ByteBuffer.wrap(first, 1, first.length - 1);
+                game = SessionSnapshot.restore(snapshot, policy, null);
+                game.resume();
+            } else {
+                return null;
+            }
+        } catch (ReplayPolicy.OutOfDecisions e) {
+            return null;
+        }
+        if (!game.isPaused()) {
+            return null;
+        }
+        return new Recovered(session, game.getHunter().getHunterName(), game.getTurns(), SessionSnapshot.save(game));
+    }
+
+    /**
+     * A game that was in progress when the log was last closed, saved as a SessionSnapshot.
+     */
+    public static class Recovered {
+        private long session;
+        private String hunterName;
+        private int turns;
+        private byte[] snapshot;
+
+        private Recovered(long session, String hunterName, int turns, byte[] snapshot) {
+            this.session = session;
+            this.hunterName = hunterName;
+            this.turns = turns;
+            this.snapshot = snapshot;
+        }
+
+        public long getSession() {
+            return session;
+        }
+
+        public String getHunterName() {
+            return hunterName;
+        }
+
+        public int getTurns() {
+            return turns;
+        }
+
+        public byte[] getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    /**
+     * Hands a replayed game its logged decisions in order.<p>
+     * Once they run out the game pauses at the menu. If they run out part way through a visit to the shop, the
+     * hunter walks out without buying or selling anything, which doesn't touch the game's random numbers; the
+     * game was then snapshotted at the menu, so this is never replayed again.
+     */
+    private static class ReplayPolicy implements Policy {
+        private List<byte[]> records;
+        private int next;
+
+        private ReplayPolicy(List<byte[]> records) {
+            this.records = records;
+            next = 1;
+        }
+
+        public String chooseName() {
+            return nextOrThrow();
+        }
+
+        public String chooseMode() {
+            return nextOrThrow();
+        }
+
+        public String chooseAction(TreasureHunter game) {
+            return nextDecision();
+        }
+
+        public String chooseShopItem(Hunter hunter, boolean isBuying) {
+            String decision = nextDecision();
+            return decision == null ? "" : decision;
+        }
+
+        public String confirm(Hunter hunter, String item, int cost, boolean isBuying) {
+            String decision = nextDecision();
+            return decision == null ? "n" : decision;
+        }
+
+        private String nextOrThrow() {
+            String decision = nextDecision();
+            if (decision == null) {
+                throw new OutOfDecisions();
+            }
+            return decision;
+        }
+
+        private String nextDecision() {
+            while (next < records.size()) {
+                byte[] record = records.get(next++);
+                if (record[0] == DECISION) {
+                    return new String(record, 1, record.length - 1, StandardCharsets.UTF_8);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Thrown when a game's log ends before the hunter has a name and a mode, so there is nothing to recover.
+         */
+        private static class OutOfDecisions extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+
+            private OutOfDecisions() {
+                super(null, null, false, false);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "sessions.wal");
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int pauseAt = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        Files.deleteIfExists(path);
+
+        // every session plays until it pauses or ends, through a policy that logs each decision
+        byte[][] expected = new byte[sessions][];
+        long[] ids = new long[sessions];
+        AtomicInteger decisions = new AtomicInteger();
+        WriteAheadLog log = new WriteAheadLog(path);
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            int index = i;
+            threads.add(Thread.ofVirtual().start(() -> {
+                GameRandom random = new GameRandom(index);
+                ids[index] = log.begin(random.getSeed());
+                DurablePolicy policy = new DurablePolicy(new PausingPolicy(new RandomPolicy("n", 200, new GameRandom(-index)), pauseAt), log, ids[index]);
+                TreasureHunter game = new TreasureHunter(policy, null, random);
+                game.play();
+                decisions.addAndGet(policy.getDecisions());
+                if (game.isPaused()) {
+                    expected[index] = SessionSnapshot.save(game);
+                } else {
+                    policy.end();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long commits = log.getCommits();
+        log.close();
+        System.out.println(String.format("%,d sessions logged %,d decisions in %.2f s: %,.0f durable decisions/s, %,d fsyncs, %.1f decisions per fsync",
+                sessions, decisions.get(), elapsed / 1e9, decisions.get() / (elapsed / 1e9), commits, (double) decisions.get() / commits));
+
+        start = System.nanoTime();
+        WriteAheadLog reopened = new WriteAheadLog(path);
+        elapsed = System.nanoTime() - start;
+        Map<Long, byte[]> recovered = new LinkedHashMap<>();
+        for (Recovered game : reopened.getRecovered()) {
+            recovered.put(game.getSession(), game.getSnapshot());
+        }
+        int mismatches = 0;
+        int unfinished = 0;
+        for (int i = 0; i < sessions; i++) {
+            if (expected[i] != null) {
+                unfinished++;
+                if (!Arrays.equals(expected[i], recovered.get(ids[i]))) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(String.format("Recovered %,d of %,d unfinished games in %.1f ms; %s",
+                recovered.size(), unfinished, elapsed / 1e6,
+                mismatches == 0 && recovered.size() == unfinished ? "every one came back as it was." : mismatches + " came back different."));
+        reopened.close();
+    }
+}